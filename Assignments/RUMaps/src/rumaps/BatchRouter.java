@@ -0,0 +1,309 @@
+package rumaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The BatchRouter class answers many route queries at once, in parallel on a ForkJoinPool.
+ *
+ * It works on a snapshot of the network taken when it is created: the CSR structure of
+ * the network's CompactGraph (which never changes) and a copy of its edge traffic, so
+ * traffic updates made while a batch runs do not affect it and the searches share no
+ * mutable state. Each worker thread keeps its own search arrays and reuses them for
+ * every query it runs.
+ *
+ * Queries are grouped by start intersection and each group is answered by one search
+ * that stops once every destination in the group is settled. The routes are the same
+ * as the ones from RUMaps.fastestPath and RUMaps.minimizeIntersections, and their
+ * information is the same as from RUMaps.pathInformation.
+ */
+public class BatchRouter {
+    // Number of start intersections below which a task stops splitting
+    private static final int SEQUENTIAL_GROUPS = 4;
+
+    private final CompactGraph graph;
+    private final Intersection[] vertices;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] lengths;
+    private final double[] traffic;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * Takes a snapshot of a network for batches run on the common pool.
+     * @param network the network to route on
+     */
+    public BatchRouter(Network network) {
+        this(network, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Takes a snapshot of a network for batches run on the given pool.
+     * @param network the network to route on
+     * @param pool the pool to run the searches on
+     */
+    public BatchRouter(Network network, ForkJoinPool pool) {
+        graph = network.getCompactGraph();
+        vertices = graph.getVertices();
+        offsets = graph.getOffsets();
+        targets = graph.getTargets();
+        lengths = graph.getLengths();
+        traffic = graph.getTraffic().clone();
+        this.pool = pool;
+        int n = vertices.length;
+        scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+    }
+
+    /**
+     * Returns the graph this router took its snapshot of.
+     * @return the network's CompactGraph at the time the router was created
+     */
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Finds the route between each pair of intersections.
+     *
+     * @param sources the indices of the starting intersections (-1 for one not in the map)
+     * @param destinations the indices of the destination intersections, paired with sources
+     * @param type MINIMIZE_INTERSECTIONS for the fewest intersections, FASTEST_PATH for the least traffic
+     * @return the routes, in the same order as the pairs; a route is empty if no path exists
+     */
+    public Route[] route(int[] sources, int[] destinations, Route.Type type) {
+        if (sources.length != destinations.length) {
+            throw new IllegalArgumentException("sources and destinations differ in length");
+        }
+
+        // Sort the query numbers by start intersection, so each group is a run
+        int q = sources.length;
+        long[] keys = new long[q];
+        for (int i = 0; i < q; i++) {
+            keys[i] = (long) sources[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[q];
+        int[] groupStarts = new int[q + 1];
+        int groups = 0;
+        for (int i = 0; i < q; i++) {
+            order[i] = (int) keys[i];
+            if (i == 0 || sources[order[i]] != sources[order[i - 1]]) {
+                groupStarts[groups++] = i;
+            }
+        }
+        groupStarts[groups] = q;
+
+        Route[] routes = new Route[q];
+        pool.invoke(new Batch(sources, destinations, type, order, groupStarts, 0, groups, routes));
+        return routes;
+    }
+
+    /**
+     * Answers the queries in groups lo through hi - 1, splitting the range in half
+     * while it holds more than SEQUENTIAL_GROUPS groups.
+     */
+    private class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] sources;
+        private final int[] destinations;
+        private final Route.Type type;
+        private final int[] order;
+        private final int[] groupStarts;
+        private final int lo;
+        private final int hi;
+        private final Route[] routes;
+
+        Batch(int[] sources, int[] destinations, Route.Type type, int[] order, int[] groupStarts,
+                int lo, int hi, Route[] routes) {
+            this.sources = sources;
+            this.destinations = destinations;
+            this.type = type;
+            this.order = order;
+            this.groupStarts = groupStarts;
+            this.lo = lo;
+            this.hi = hi;
+            this.routes = routes;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > SEQUENTIAL_GROUPS) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Batch(sources, destinations, type, order, groupStarts, lo, mid, routes),
+                          new Batch(sources, destinations, type, order, groupStarts, mid, hi, routes));
+                return;
+            }
+            Scratch s = scratch.get();
+            for (int g = lo; g < hi; g++) {
+                routeGroup(s, sources, destinations, type, order, groupStarts[g], groupStarts[g + 1], routes);
+            }
+        }
+    }
+
+    /**
+     * Answers queries order[from] through order[to - 1], which all share a start intersection.
+     */
+    private void routeGroup(Scratch s, int[] sources, int[] destinations, Route.Type type,
+                            int[] order, int from, int to, Route[] routes) {
+        int source = sources[order[from]];
+        int n = vertices.length;
+        if (source < 0 || source >= n) {
+            for (int i = from; i < to; i++) {
+                routes[order[i]] = emptyRoute(type);
+            }
+            return;
+        }
+
+        s.newSearch();
+        int remaining = 0;
+        for (int i = from; i < to; i++) {
+            int target = destinations[order[i]];
+            if (target >= 0 && target < n && s.wanted[target] != s.stamp) {
+                s.wanted[target] = s.stamp;
+                remaining++;
+            }
+        }
+        if (type == Route.Type.FASTEST_PATH) {
+            dijkstra(s, source, remaining);
+        } else {
+            breadthFirst(s, source, remaining);
+        }
+
+        for (int i = from; i < to; i++) {
+            int target = destinations[order[i]];
+            if (target < 0 || target >= n || s.reached[target] != s.stamp) {
+                routes[order[i]] = emptyRoute(type);
+            } else {
+                routes[order[i]] = buildRoute(s, type, target);
+            }
+        }
+    }
+
+    /**
+     * Runs Dijkstra's algorithm over traffic until the given number of wanted
+     * intersections is settled, as fastestPath does for a single destination.
+     */
+    private void dijkstra(Scratch s, int source, int remaining) {
+        s.reach(source, -1, 0);
+        s.fringe.insert(source, 0);
+        while (!s.fringe.isEmpty() && remaining > 0) {
+            int u = s.fringe.delMin();
+            if (s.wanted[u] == s.stamp) {
+                remaining--;
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                double newDist = s.dist[u] + traffic[e];
+                if (s.reached[v] != s.stamp || newDist < s.dist[v]) {
+                    s.reach(v, u, newDist);
+                    s.fringe.insertOrDecrease(v, newDist);
+                }
+            }
+        }
+        s.fringe.clear();
+    }
+
+    /**
+     * Runs a breadth-first search until the given number of wanted intersections
+     * is dequeued, as minimizeIntersections does for a single destination.
+     */
+    private void breadthFirst(Scratch s, int source, int remaining) {
+        int head = 0, tail = 0;
+        s.reach(source, -1, 0);
+        s.queue[tail++] = source;
+        while (head < tail && remaining > 0) {
+            int u = s.queue[head++];
+            if (s.wanted[u] == s.stamp) {
+                remaining--;
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                if (s.reached[v] != s.stamp) {
+                    s.reach(v, u, 0);
+                    s.queue[tail++] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the path to a target off the search arrays and computes its information the
+     * way pathInformation does: between consecutive intersections it uses the first
+     * block in adjacency order that joins them.
+     */
+    private Route buildRoute(Scratch s, Route.Type type, int target) {
+        int count = 0;
+        for (int v = target; v != -1; v = s.pred[v]) {
+            s.path[count++] = v;
+        }
+        ArrayList<Intersection> path = new ArrayList<>(count);
+        double totalLength = 0;
+        double totalTraffic = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            int v = s.path[i];
+            path.add(vertices[v]);
+            if (i > 0) {
+                int next = s.path[i - 1];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    if (targets[e] == next) {
+                        totalLength += lengths[e];
+                        totalTraffic += traffic[e];
+                        break;
+                    }
+                }
+            }
+        }
+        double averageTrafficFactor = totalLength > 0 ? totalTraffic / totalLength : 0;
+        return new Route(type, path, new double[]{totalLength, averageTrafficFactor, totalTraffic});
+    }
+
+    private static Route emptyRoute(Route.Type type) {
+        return new Route(type, new ArrayList<>(), new double[]{0, 0, 0});
+    }
+
+    /**
+     * Search arrays owned by one worker thread. Instead of being cleared between searches,
+     * entries are tagged with the number of the search that wrote them (stamp), so starting
+     * a search takes constant time.
+     */
+    private static class Scratch {
+        private final double[] dist;
+        private final int[] pred;
+        private final int[] reached;  // reached[v] == stamp if v was reached by the current search
+        private final int[] wanted;   // wanted[v] == stamp if v is a destination of the current search
+        private final int[] queue;
+        private final int[] path;
+        private final IndexMinPQ fringe;
+        private int stamp;
+
+        Scratch(int n) {
+            dist = new double[n];
+            pred = new int[n];
+            reached = new int[n];
+            wanted = new int[n];
+            queue = new int[n];
+            path = new int[n];
+            fringe = new IndexMinPQ(n);
+        }
+
+        void newSearch() {
+            stamp++;
+            if (stamp == 0) {
+                // The counter wrapped around, so old tags could look current
+                Arrays.fill(reached, 0);
+                Arrays.fill(wanted, 0);
+                stamp = 1;
+            }
+        }
+
+        void reach(int v, int from, double distance) {
+            reached[v] = stamp;
+            pred[v] = from;
+            dist[v] = distance;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package rumaps;
+
+import java.util.Arrays;
+
+/**
+ * The CompactGraph class is a compressed sparse row (CSR) form of a Network.
+ * It is built once the network is complete and is what the RUMaps searches traverse.
+ * Its structure is fixed, but an edge's traffic factor can be changed in place
+ * with setTrafficFactor.
+ *
+ * Vertices are the intersection indices of the Network. The edges leaving vertex v are
+ * numbered offsets[v] through offsets[v + 1] - 1, in the same order as the Block list
+ * in the Network's adjacency list, and for each edge e:
+ * - sources[e] / targets[e] - indices of the block's first and last endpoints
+ * - lengths[e] - length of the block
+ * - trafficFactors[e] - traffic factor of the block
+ * - traffic[e] - traffic of the block (length times traffic factor)
+ * - blocks[e] - the Block the edge was built from
+ *
+ * Each direction of a block is a separate edge with its own traffic factor, so the
+ * graph also keeps the edges entering each vertex: reverseEdges[reverseOffsets[v]]
+ * through reverseEdges[reverseOffsets[v + 1] - 1] are the ids of the edges whose
+ * target is v, for searches that run backward from a destination.
+ *
+ * It also records the smallest traffic factor of any edge, which makes
+ * minTrafficFactor() times the straight-line distance between two intersections a
+ * lower bound on the traffic between them (every block is at least as long as the
+ * segment joining its endpoints). Raising a factor later leaves the recorded
+ * minimum as it was, which is still a valid (if looser) bound.
+ */
+public class CompactGraph {
+    private final Intersection[] vertices;
+    private final int[] offsets;
+    private final int[] sources;
+    private final int[] targets;
+    private final double[] lengths;
+    private final double[] trafficFactors;
+    private final double[] traffic;
+    private final Block[] blocks;
+    private final int[] reverseOffsets;
+    private final int[] reverseEdges;
+    private double minTrafficFactor;
+
+    /**
+     * Builds the CSR form of a network from its current adjacency list.
+     * Edge values are copied from the blocks, so the graph must be rebuilt
+     * (or updated with setTrafficFactor) if a block changes afterwards.
+     *
+     * @param network the network to compact
+     */
+    public CompactGraph(Network network) {
+        vertices = network.getIntersections();
+        Block[] adj = network.getAdjacencyList();
+        int n = vertices.length;
+
+        offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            int degree = 0;
+            for (Block ptr = adj[v]; ptr != null; ptr = ptr.getNext()) {
+                degree++;
+            }
+            offsets[v + 1] = offsets[v] + degree;
+        }
+
+        int m = offsets[n];
+        sources = new int[m];
+        targets = new int[m];
+        lengths = new double[m];
+        trafficFactors = new double[m];
+        traffic = new double[m];
+        blocks = new Block[m];
+        minTrafficFactor = Double.POSITIVE_INFINITY;
+
+        for (int v = 0; v < n; v++) {
+            int e = offsets[v];
+            for (Block ptr = adj[v]; ptr != null; ptr = ptr.getNext(), e++) {
+                sources[e] = v;
+                targets[e] = network.findIntersection(ptr.getLastEndpoint().getCoordinate());
+                lengths[e] = ptr.getLength();
+                trafficFactors[e] = ptr.getTrafficFactor();
+                traffic[e] = ptr.getTrafficFactor() * ptr.getLength();
+                blocks[e] = ptr;
+                minTrafficFactor = Math.min(minTrafficFactor, trafficFactors[e]);
+            }
+        }
+
+        reverseOffsets = new int[n + 1];
+        reverseEdges = new int[m];
+        for (int e = 0; e < m; e++) {
+            reverseOffsets[targets[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+        int[] next = Arrays.copyOf(reverseOffsets, n);
+        for (int e = 0; e < m; e++) {
+            reverseEdges[next[targets[e]]++] = e;
+        }
+    }
+
+    public int vertexCount() {
+        return vertices.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Returns the smallest traffic factor of any edge, or 0 if there are no
+     * edges (or a factor is negative), so that bounds scaled by it stay valid.
+     * @return the minimum edge traffic factor
+     */
+    public double minTrafficFactor() {
+        if (minTrafficFactor == Double.POSITIVE_INFINITY || minTrafficFactor < 0) return 0;
+        return minTrafficFactor;
+    }
+
+    /**
+     * Returns a lower bound on the traffic of any path between two vertices:
+     * the straight-line distance between them scaled by the minimum traffic factor.
+     * @param u the first vertex
+     * @param v the second vertex
+     * @return a lower bound on the traffic from u to v
+     */
+    public double trafficLowerBound(int u, int v) {
+        Coordinate a = vertices[u].getCoordinate();
+        Coordinate b = vertices[v].getCoordinate();
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        return minTrafficFactor() * Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Returns the id of the edge built from a block.
+     * @param source the index of the block's first endpoint
+     * @param block the block
+     * @return the edge id, or -1 if the block does not leave source
+     */
+    public int findEdge(int source, Block block) {
+        for (int e = offsets[source]; e < offsets[source + 1]; e++) {
+            if (blocks[e] == block) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Changes the traffic factor of an edge, and its traffic to match.
+     * @param e the edge id
+     * @param trafficFactor the new traffic factor
+     */
+    public void setTrafficFactor(int e, double trafficFactor) {
+        trafficFactors[e] = trafficFactor;
+        traffic[e] = trafficFactor * lengths[e];
+        minTrafficFactor = Math.min(minTrafficFactor, trafficFactor);
+    }
+
+    public Intersection[] getVertices() {
+        return vertices;
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getSources() {
+        return sources;
+    }
+
+    public int[] getTargets() {
+        return targets;
+    }
+
+    public double[] getLengths() {
+        return lengths;
+    }
+
+    public double[] getTrafficFactors() {
+        return trafficFactors;
+    }
+
+    public double[] getTraffic() {
+        return traffic;
+    }
+
+    public Block[] getBlocks() {
+        return blocks;
+    }
+
+    public int[] getReverseOffsets() {
+        return reverseOffsets;
+    }
+
+    public int[] getReverseEdges() {
+        return reverseEdges;
+    }
+}
@@ -0,0 +1,503 @@
+package rumaps;
+
+import java.util.Arrays;
+
+/**
+ * The ContractionHierarchy class preprocesses a CompactGraph so that least-traffic
+ * queries between any two intersections only need to search a small part of the map.
+ *
+ * Intersections are contracted one at a time, least important first (ordered by edge
+ * difference plus the number of already-contracted neighbors, with lazy updates).
+ * Contracting v removes it from the remaining graph and, for every pair of remaining
+ * neighbors u -> v -> w whose path through v cannot be matched by a short witness search
+ * that avoids v, adds a shortcut edge u -> w remembering v as its middle vertex.
+ * The order in which intersections are contracted is their rank.
+ *
+ * A query runs Dijkstra's algorithm forward from the start over edges that lead to a
+ * higher rank and backward from the end over edges that come from a higher rank; the
+ * least total where the two searches meet is the least traffic between the endpoints.
+ * Shortcuts on the resulting path are then unpacked recursively into the original blocks.
+ *
+ * Parallel blocks between the same pair of intersections are merged, keeping the one
+ * with the least traffic. The hierarchy is built from the traffic values of the graph
+ * when it is constructed, so it must be rebuilt if traffic changes.
+ */
+public class ContractionHierarchy {
+    // Maximum number of vertices a witness search may settle before giving up
+    private static final int WITNESS_SETTLE_LIMIT = 64;
+
+    private final CompactGraph graph;
+    private final int[] rank;
+    private int shortcutCount;
+
+    // Upward edges u -> w (rank[u] < rank[w]) stored at u, for the forward search
+    private int[] upOffsets;
+    private int[] upTargets;
+    private double[] upWeights;
+    private int[] upMiddles;
+
+    // Downward edges u -> w (rank[u] > rank[w]) stored at w, for the backward search
+    private int[] downOffsets;
+    private int[] downSources;
+    private double[] downWeights;
+    private int[] downMiddles;
+
+    // Edges of the graph being contracted; only used while building
+    private EdgeList[] out;
+    private EdgeList[] in;
+    private boolean[] contracted;
+
+    // Witness search scratch space; only used while building
+    private double[] witnessDist;
+    private int[] touched;
+    private IndexMinPQ witnessFringe;
+
+    /**
+     * Builds the contraction hierarchy of a graph.
+     *
+     * @param graph the graph to preprocess
+     */
+    public ContractionHierarchy(CompactGraph graph) {
+        this.graph = graph;
+        int n = graph.vertexCount();
+        rank = new int[n];
+
+        out = new EdgeList[n];
+        in = new EdgeList[n];
+        for (int v = 0; v < n; v++) {
+            out[v] = new EdgeList();
+            in[v] = new EdgeList();
+        }
+        int[] sources = graph.getSources();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            if (sources[e] != targets[e]) {
+                addOrImprove(sources[e], targets[e], traffic[e], -1);
+            }
+        }
+
+        contracted = new boolean[n];
+        witnessDist = new double[n];
+        Arrays.fill(witnessDist, Double.POSITIVE_INFINITY);
+        touched = new int[n];
+        witnessFringe = new IndexMinPQ(n);
+        contractAll();
+        buildSearchGraphs();
+
+        out = null;
+        in = null;
+        contracted = null;
+        witnessDist = null;
+        touched = null;
+        witnessFringe = null;
+    }
+
+    /**
+     * Returns the graph this hierarchy was built from.
+     *
+     * @return the preprocessed graph
+     */
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the number of shortcut edges added during preprocessing.
+     *
+     * @return the number of shortcuts
+     */
+    public int getShortcutCount() {
+        return shortcutCount;
+    }
+
+    /**
+     * Returns the least total traffic of a path from source to target.
+     *
+     * @param source the index of the starting intersection
+     * @param target the index of the destination intersection
+     * @return the least traffic, or Double.POSITIVE_INFINITY if no path exists
+     */
+    public double distance(int source, int target) {
+        return new Query(source, target).best;
+    }
+
+    /**
+     * Returns the intersection indices on a least-traffic path from source to target,
+     * with every shortcut unpacked into the original blocks.
+     *
+     * @param source the index of the starting intersection
+     * @param target the index of the destination intersection
+     * @return the path from source to target, or an empty array if no path exists
+     */
+    public int[] path(int source, int target) {
+        Query query = new Query(source, target);
+        if (query.best == Double.POSITIVE_INFINITY) {
+            return new int[0];
+        }
+
+        // Hierarchy path: source -> ... -> meet via pred, then meet -> ... -> target via succ
+        int[] hierarchyPath = new int[rank.length];
+        int length = 0;
+        for (int v = query.meet; v != -1; v = query.pred[v]) {
+            hierarchyPath[length++] = v;
+        }
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int swap = hierarchyPath[i];
+            hierarchyPath[i] = hierarchyPath[j];
+            hierarchyPath[j] = swap;
+        }
+        for (int v = query.succ[query.meet]; v != -1; v = query.succ[v]) {
+            hierarchyPath[length++] = v;
+        }
+
+        IntList unpacked = new IntList();
+        unpacked.add(hierarchyPath[0]);
+        IntList stack = new IntList();
+        for (int i = 0; i + 1 < length; i++) {
+            stack.add(hierarchyPath[i]);
+            stack.add(hierarchyPath[i + 1]);
+            while (stack.size > 0) {
+                int w = stack.pop();
+                int u = stack.pop();
+                int middle = middle(u, w);
+                if (middle == -1) {
+                    unpacked.add(w);
+                } else {
+                    // Unpack u -> middle before middle -> w
+                    stack.add(middle);
+                    stack.add(w);
+                    stack.add(u);
+                    stack.add(middle);
+                }
+            }
+        }
+        return Arrays.copyOf(unpacked.items, unpacked.size);
+    }
+
+    /**
+     * Returns the middle vertex of the hierarchy edge u -> w, or -1 if it is an original block.
+     */
+    private int middle(int u, int w) {
+        if (rank[u] < rank[w]) {
+            for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                if (upTargets[e] == w) return upMiddles[e];
+            }
+        } else {
+            for (int e = downOffsets[w]; e < downOffsets[w + 1]; e++) {
+                if (downSources[e] == u) return downMiddles[e];
+            }
+        }
+        throw new IllegalStateException("No hierarchy edge from " + u + " to " + w);
+    }
+
+    /**
+     * A bidirectional upward search between two vertices.
+     */
+    private class Query {
+        private final double[] forwardDist;
+        private final double[] backwardDist;
+        private final int[] pred;
+        private final int[] succ;
+        private double best = Double.POSITIVE_INFINITY;
+        private int meet = -1;
+
+        private Query(int source, int target) {
+            int n = rank.length;
+            forwardDist = new double[n];
+            backwardDist = new double[n];
+            pred = new int[n];
+            succ = new int[n];
+            Arrays.fill(forwardDist, Double.POSITIVE_INFINITY);
+            Arrays.fill(backwardDist, Double.POSITIVE_INFINITY);
+            Arrays.fill(pred, -1);
+            Arrays.fill(succ, -1);
+            IndexMinPQ forwardFringe = new IndexMinPQ(n);
+            IndexMinPQ backwardFringe = new IndexMinPQ(n);
+
+            forwardDist[source] = 0;
+            backwardDist[target] = 0;
+            forwardFringe.insert(source, 0);
+            backwardFringe.insert(target, 0);
+            if (source == target) {
+                best = 0;
+                meet = source;
+            }
+
+            boolean forward = true;
+            while (true) {
+                boolean forwardOpen = !forwardFringe.isEmpty() && forwardFringe.minPriority() < best;
+                boolean backwardOpen = !backwardFringe.isEmpty() && backwardFringe.minPriority() < best;
+                if (!forwardOpen && !backwardOpen) {
+                    break;
+                }
+                forward = forwardOpen && (forward || !backwardOpen);
+                if (forward) {
+                    int u = forwardFringe.delMin();
+                    for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                        int w = upTargets[e];
+                        double newDist = forwardDist[u] + upWeights[e];
+                        if (newDist < forwardDist[w]) {
+                            forwardDist[w] = newDist;
+                            pred[w] = u;
+                            forwardFringe.insertOrDecrease(w, newDist);
+                            if (newDist + backwardDist[w] < best) {
+                                best = newDist + backwardDist[w];
+                                meet = w;
+                            }
+                        }
+                    }
+                } else {
+                    int w = backwardFringe.delMin();
+                    for (int e = downOffsets[w]; e < downOffsets[w + 1]; e++) {
+                        int u = downSources[e];
+                        double newDist = backwardDist[w] + downWeights[e];
+                        if (newDist < backwardDist[u]) {
+                            backwardDist[u] = newDist;
+                            succ[u] = w;
+                            backwardFringe.insertOrDecrease(u, newDist);
+                            if (forwardDist[u] + newDist < best) {
+                                best = forwardDist[u] + newDist;
+                                meet = u;
+                            }
+                        }
+                    }
+                }
+                forward = !forward;
+            }
+        }
+    }
+
+    /* Preprocessing */
+
+    private void contractAll() {
+        int n = rank.length;
+        int[] contractedNeighbors = new int[n];
+        IndexMinPQ order = new IndexMinPQ(n);
+        for (int v = 0; v < n; v++) {
+            order.insert(v, priority(v, 0));
+        }
+
+        int nextRank = 0;
+        while (!order.isEmpty()) {
+            int v = order.delMin();
+            // Lazy update: the stored priority may be stale, so recompute it before contracting
+            double priority = priority(v, contractedNeighbors[v]);
+            if (!order.isEmpty() && priority > order.minPriority()) {
+                order.insert(v, priority);
+                continue;
+            }
+
+            contract(v, false);
+            contracted[v] = true;
+            rank[v] = nextRank++;
+            for (int i = 0; i < out[v].size; i++) {
+                if (!contracted[out[v].vertices[i]]) contractedNeighbors[out[v].vertices[i]]++;
+            }
+            for (int i = 0; i < in[v].size; i++) {
+                if (!contracted[in[v].vertices[i]]) contractedNeighbors[in[v].vertices[i]]++;
+            }
+        }
+    }
+
+    /**
+     * Returns the contraction priority of v: the shortcuts contracting it would add, less the
+     * edges it would remove, plus the number of its neighbors that are already contracted.
+     */
+    private double priority(int v, int contractedNeighbors) {
+        int degree = 0;
+        for (int i = 0; i < out[v].size; i++) {
+            if (!contracted[out[v].vertices[i]]) degree++;
+        }
+        for (int i = 0; i < in[v].size; i++) {
+            if (!contracted[in[v].vertices[i]]) degree++;
+        }
+        return contract(v, true) - degree + contractedNeighbors;
+    }
+
+    /**
+     * Adds (or, when simulating, only counts) the shortcuts needed to contract v.
+     *
+     * @return the number of shortcuts needed
+     */
+    private int contract(int v, boolean simulate) {
+        int shortcuts = 0;
+        EdgeList incoming = in[v];
+        EdgeList outgoing = out[v];
+        for (int i = 0; i < incoming.size; i++) {
+            int u = incoming.vertices[i];
+            if (contracted[u]) continue;
+
+            double maxVia = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < outgoing.size; j++) {
+                int w = outgoing.vertices[j];
+                if (!contracted[w] && w != u) {
+                    maxVia = Math.max(maxVia, incoming.weights[i] + outgoing.weights[j]);
+                }
+            }
+            if (maxVia == Double.NEGATIVE_INFINITY) continue;
+
+            int touchedCount = witnessSearch(u, v, maxVia);
+            for (int j = 0; j < outgoing.size; j++) {
+                int w = outgoing.vertices[j];
+                if (contracted[w] || w == u) continue;
+                double via = incoming.weights[i] + outgoing.weights[j];
+                if (witnessDist[w] > via) {
+                    shortcuts++;
+                    if (!simulate && addOrImprove(u, w, via, v)) {
+                        shortcutCount++;
+                    }
+                }
+            }
+            for (int k = 0; k < touchedCount; k++) {
+                witnessDist[touched[k]] = Double.POSITIVE_INFINITY;
+            }
+            witnessFringe.clear();
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Runs a bounded Dijkstra search from u over uncontracted vertices other than v, leaving
+     * the distances found in witnessDist.
+     *
+     * @return the number of vertices whose witnessDist was set, listed in touched
+     */
+    private int witnessSearch(int u, int v, double limit) {
+        int touchedCount = 0;
+        witnessDist[u] = 0;
+        touched[touchedCount++] = u;
+        witnessFringe.insert(u, 0);
+        int settled = 0;
+        while (!witnessFringe.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+            if (witnessFringe.minPriority() > limit) break;
+            int x = witnessFringe.delMin();
+            settled++;
+            EdgeList edges = out[x];
+            for (int i = 0; i < edges.size; i++) {
+                int y = edges.vertices[i];
+                if (y == v || contracted[y]) continue;
+                double newDist = witnessDist[x] + edges.weights[i];
+                if (newDist < witnessDist[y]) {
+                    if (witnessDist[y] == Double.POSITIVE_INFINITY) touched[touchedCount++] = y;
+                    witnessDist[y] = newDist;
+                    witnessFringe.insertOrDecrease(y, newDist);
+                }
+            }
+        }
+        return touchedCount;
+    }
+
+    /**
+     * Adds the edge u -> w, or lowers the weight of the existing edge u -> w.
+     *
+     * @return true if a new edge was added
+     */
+    private boolean addOrImprove(int u, int w, double weight, int middle) {
+        int i = out[u].indexOf(w);
+        if (i == -1) {
+            out[u].add(w, weight, middle);
+            in[w].add(u, weight, middle);
+            return true;
+        }
+        if (weight < out[u].weights[i]) {
+            int j = in[w].indexOf(u);
+            out[u].weights[i] = weight;
+            out[u].middles[i] = middle;
+            in[w].weights[j] = weight;
+            in[w].middles[j] = middle;
+        }
+        return false;
+    }
+
+    private void buildSearchGraphs() {
+        int n = rank.length;
+        upOffsets = new int[n + 1];
+        downOffsets = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            int up = 0;
+            for (int i = 0; i < out[u].size; i++) {
+                if (rank[out[u].vertices[i]] > rank[u]) up++;
+            }
+            int down = 0;
+            for (int i = 0; i < in[u].size; i++) {
+                if (rank[in[u].vertices[i]] > rank[u]) down++;
+            }
+            upOffsets[u + 1] = upOffsets[u] + up;
+            downOffsets[u + 1] = downOffsets[u] + down;
+        }
+
+        upTargets = new int[upOffsets[n]];
+        upWeights = new double[upOffsets[n]];
+        upMiddles = new int[upOffsets[n]];
+        downSources = new int[downOffsets[n]];
+        downWeights = new double[downOffsets[n]];
+        downMiddles = new int[downOffsets[n]];
+        for (int u = 0; u < n; u++) {
+            int e = upOffsets[u];
+            for (int i = 0; i < out[u].size; i++) {
+                if (rank[out[u].vertices[i]] > rank[u]) {
+                    upTargets[e] = out[u].vertices[i];
+                    upWeights[e] = out[u].weights[i];
+                    upMiddles[e] = out[u].middles[i];
+                    e++;
+                }
+            }
+            e = downOffsets[u];
+            for (int i = 0; i < in[u].size; i++) {
+                if (rank[in[u].vertices[i]] > rank[u]) {
+                    downSources[e] = in[u].vertices[i];
+                    downWeights[e] = in[u].weights[i];
+                    downMiddles[e] = in[u].middles[i];
+                    e++;
+                }
+            }
+        }
+    }
+
+    /**
+     * A growable list of weighted edges to (or from) other vertices.
+     */
+    private static class EdgeList {
+        private int[] vertices = new int[4];
+        private double[] weights = new double[4];
+        private int[] middles = new int[4];
+        private int size;
+
+        private int indexOf(int vertex) {
+            for (int i = 0; i < size; i++) {
+                if (vertices[i] == vertex) return i;
+            }
+            return -1;
+        }
+
+        private void add(int vertex, double weight, int middle) {
+            if (size == vertices.length) {
+                vertices = Arrays.copyOf(vertices, 2 * size);
+                weights = Arrays.copyOf(weights, 2 * size);
+                middles = Arrays.copyOf(middles, 2 * size);
+            }
+            vertices[size] = vertex;
+            weights[size] = weight;
+            middles[size] = middle;
+            size++;
+        }
+    }
+
+    /**
+     * A growable list of ints, also used as a stack.
+     */
+    private static class IntList {
+        private int[] items = new int[16];
+        private int size;
+
+        private void add(int item) {
+            if (size == items.length) items = Arrays.copyOf(items, 2 * size);
+            items[size++] = item;
+        }
+
+        private int pop() {
+            return items[--size];
+        }
+    }
+}
@@ -23,6 +23,8 @@ public class Driver {
      * that changing the seed will result in different outputs.
      */
     private final static int SEED = 2024;
+    // Run with -Drumaps.metrics=true to show what each path search cost under its path
+    private final static boolean SHOW_METRICS = Boolean.getBoolean("rumaps.metrics");
     private String networkPath = "Busch.in";
     private final String BUSCH_PATH = "Busch.in";
     private final String COORDINATES_PATH = "AllCampuses.in";
@@ -98,7 +100,8 @@ public class Driver {
         JPanel container = new JPanel();
         container.setLayout(new BorderLayout());
 
-        rumaps = new RUMaps(mapPanel, networkPath);
+        rumaps = MapLoader.load(mapPanel, networkPath);
+        if (SHOW_METRICS) rumaps.enableMetrics();
 
         JPanel streetInfo = makeStreetInfo();
         container.add(streetInfo, BorderLayout.NORTH);
@@ -213,7 +216,8 @@ public class Driver {
                     }
                 };
                 networkPath = COORDINATES_PATH;
-                rumaps = new RUMaps(newMapPanel, networkPath);
+                rumaps = MapLoader.load(newMapPanel, networkPath);
+                if (SHOW_METRICS) rumaps.enableMetrics();
                 switchMap(newMapPanel);
             }
         });
@@ -228,7 +232,8 @@ public class Driver {
                 };
                 networkPath = BUSCH_PATH;
                 StdRandom.setSeed(SEED);
-                rumaps = new RUMaps(newMapPanel, networkPath);
+                rumaps = MapLoader.load(newMapPanel, networkPath);
+                if (SHOW_METRICS) rumaps.enableMetrics();
                 switchMap(newMapPanel);
             }
         });
@@ -364,11 +369,17 @@ public class Driver {
         }
         else {
             ArrayList<Intersection> dfsPath = rumaps.reachableIntersections(start);
-            ArrayList<Intersection> minPath = rumaps.minimizeIntersections(start, end);
-            ArrayList<Intersection> fastPath = rumaps.fastestPath(start, end);
-
-            double[] minPathInfo = rumaps.pathInformation(minPath);
-            double[] fastPathInfo = rumaps.pathInformation(fastPath);
+            SearchMetrics metrics = rumaps.getMetrics();
+            if (metrics != null) metrics.takeLast();
+            Route minRoute = rumaps.cachedRoute(start, end, Route.Type.MINIMIZE_INTERSECTIONS);
+            String minMetrics = formatMetrics(metrics);
+            Route fastRoute = rumaps.cachedRoute(start, end, Route.Type.FASTEST_PATH);
+            String fastMetrics = formatMetrics(metrics);
+            ArrayList<Intersection> minPath = minRoute.getPath();
+            ArrayList<Intersection> fastPath = fastRoute.getPath();
+
+            double[] minPathInfo = minRoute.getInformation();
+            double[] fastPathInfo = fastRoute.getInformation();
             defaultBlockLengthValue = String.format(
                 "<span style=\"color:rgb(%s,%s,%s);\">%.2f</span>, <span style=\"color:rgb(%s,%s,%s);\">%.2f</span>", 
                 mapPanel.minimizeIntersectionPathColor.getRed(), mapPanel.minimizeIntersectionPathColor.getGreen(), 
@@ -406,7 +417,7 @@ public class Driver {
                         clipboard.setContents(stringSelection, null);  
                     }
                 });
-                minIntersectionsLabel.setText("<html><b>Minimize Intersections (BFS):</b>  " + formattedMinPaths[0]);
+                minIntersectionsLabel.setText("<html><b>Minimize Intersections (BFS):</b>  " + formattedMinPaths[0] + minMetrics);
                 minIntersectionsLabel.setToolTipText(String.format("<html><span style=\"color:rgb(%s, %s, %s)\"> %s",
                     mapPanel.minimizeIntersectionPathColor.getRed(), mapPanel.minimizeIntersectionPathColor.getGreen(), 
                     mapPanel.minimizeIntersectionPathColor.getBlue(), formattedMinPaths[1]));
@@ -423,7 +434,7 @@ public class Driver {
                     }
                 });
     
-                fastestPathLabel.setText("<html><b>Fastest Path:</b>  " + formattedFastPaths[0]);
+                fastestPathLabel.setText("<html><b>Fastest Path:</b>  " + formattedFastPaths[0] + fastMetrics);
                 fastestPathLabel.setToolTipText(String.format("<html><span style=\"color:rgb(%s, %s, %s)\"> %s",
                     mapPanel.fastestPathColor.getRed(), mapPanel.fastestPathColor.getGreen(), 
                     mapPanel.fastestPathColor.getBlue(),formattedFastPaths[1]));
@@ -444,6 +455,25 @@ public class Driver {
         }
     }
 
+    /**
+     * Describes the search that ran since the metrics' last sample was taken, along with
+     * the spread of wall times of that method so far, or notes that the route came from
+     * the cache. Empty if metrics are not enabled.
+     */
+    private String formatMetrics(SearchMetrics metrics) {
+        if (metrics == null) {
+            return "";
+        }
+        SearchMetrics.Sample sample = metrics.takeLast();
+        if (sample == null) {
+            return "<br><small>(cached)</small>";
+        }
+        SearchMetrics.Histogram nanos = metrics.getStats(sample.getMethod()).getNanos();
+        return String.format("<br><small>settled %d, relaxed %d, heap ops %d, %.3f ms (p50 &le; %.3f ms, p99 &le; %.3f ms over %d)</small>",
+            sample.getSettled(), sample.getRelaxed(), sample.getHeapOperations(), sample.getNanos() / 1e6,
+            nanos.percentile(50) / 1e6, nanos.percentile(99) / 1e6, nanos.getCount());
+    }
+
     private String[] formatDFSPath(ArrayList<Intersection> path) {
         if (path == null || path.size() < 2) {
             return new String[] {"N/A", null};
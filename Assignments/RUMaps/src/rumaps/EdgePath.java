@@ -0,0 +1,120 @@
+package rumaps;
+
+import java.util.ArrayList;
+
+/**
+ * The EdgePath class holds a path through a CompactGraph as the ids of the edges it
+ * traverses, recorded by the search that found it. Unlike a list of intersections, it
+ * says which block joins each pair of consecutive intersections, so its length and
+ * traffic are sums of the graph's per-edge values, without looking any block up.
+ * It contains the following attributes:
+ * - graph - the graph whose edge ids the path uses
+ * - source - index of the first intersection (-1 if no path exists)
+ * - edges - edge ids in order from the source; empty for a path of one intersection
+ */
+public class EdgePath {
+    private final CompactGraph graph;
+    private final int source;
+    private final int[] edges;
+
+    public EdgePath(CompactGraph graph, int source, int[] edges) {
+        this.graph = graph;
+        this.source = source;
+        this.edges = edges;
+    }
+
+    /**
+     * Returns the path that does not exist, for queries with no answer.
+     * @param graph the graph searched
+     * @return a path with no intersections
+     */
+    public static EdgePath empty(CompactGraph graph) {
+        return new EdgePath(graph, -1, new int[0]);
+    }
+
+    /**
+     * Follows an array of predecessor edges back from a target to the search source.
+     * @param graph the graph searched
+     * @param predEdge predEdge[v] is the id of the edge into v on the path, or -1 at the source
+     * @param target the index of the last intersection on the path
+     * @return the path from the source to the target
+     */
+    public static EdgePath trace(CompactGraph graph, int[] predEdge, int target) {
+        int[] sources = graph.getSources();
+        int count = 0;
+        int v = target;
+        for (; predEdge[v] != -1; v = sources[predEdge[v]]) {
+            count++;
+        }
+        int[] edges = new int[count];
+        for (int x = target; predEdge[x] != -1; x = sources[predEdge[x]]) {
+            edges[--count] = predEdge[x];
+        }
+        return new EdgePath(graph, v, edges);
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public boolean isEmpty() {
+        return source == -1;
+    }
+
+    /**
+     * Returns a copy of the edge ids on this path.
+     * @return the edge ids, in order from the source
+     */
+    public int[] getEdges() {
+        return edges.clone();
+    }
+
+    /**
+     * Returns the intersections on this path.
+     * @return the path from start to end, or an empty list if no path exists
+     */
+    public ArrayList<Intersection> getIntersections() {
+        ArrayList<Intersection> path = new ArrayList<>(edges.length + 1);
+        if (isEmpty()) {
+            return path;
+        }
+        Intersection[] vertices = graph.getVertices();
+        int[] targets = graph.getTargets();
+        path.add(vertices[source]);
+        for (int e : edges) {
+            path.add(vertices[targets[e]]);
+        }
+        return path;
+    }
+
+    /**
+     * Returns the blocks on this path.
+     * @return the blocks, in order from the start
+     */
+    public ArrayList<Block> getBlocks() {
+        Block[] blocks = graph.getBlocks();
+        ArrayList<Block> path = new ArrayList<>(edges.length);
+        for (int e : edges) {
+            path.add(blocks[e]);
+        }
+        return path;
+    }
+
+    /**
+     * Calculates the total length, average experienced traffic factor, and total traffic
+     * of this path from the graph's current edge values.
+     * @return the total length, average experienced traffic factor, and total traffic (in that order)
+     */
+    public double[] information() {
+        double[] lengths = graph.getLengths();
+        double[] traffic = graph.getTraffic();
+        double totalLength = 0;
+        double totalTraffic = 0;
+        for (int e : edges) {
+            totalLength += lengths[e];
+            totalTraffic += traffic[e];
+        }
+        double averageTrafficFactor = totalLength > 0 ? totalTraffic / totalLength : 0;
+        return new double[]{totalLength, averageTrafficFactor, totalTraffic};
+    }
+}
@@ -0,0 +1,205 @@
+package rumaps;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * The IndexMinPQ class is an indexed priority queue of integer keys in the range
+ * 0 to n-1, each associated with a double priority. It is used by the routing
+ * methods in RUMaps to run Dijkstra's algorithm directly over intersection indices.
+ *
+ * It supports the usual insert and delete-the-minimum operations, along with
+ * decrease-key, which lets a shortest path search lower a vertex's distance in
+ * place instead of removing and re-adding it.
+ *
+ * This implementation uses a binary heap along with an array to associate keys
+ * with their heap positions (see IndexMinPQ in Algorithms, 4th Edition).
+ * The insert, delete-the-minimum, and decrease-key operations take logarithmic time.
+ * The is-empty, size, contains, and priority operations take constant time.
+ */
+public class IndexMinPQ {
+    private int n;              // number of keys on the priority queue
+    private int[] pq;           // binary heap using 1-based indexing
+    private int[] qp;           // inverse of pq: qp[pq[i]] = pq[qp[i]] = i, -1 if absent
+    private double[] priorities; // priorities[i] = priority of key i
+    private long operations;    // number of insert, decrease-key, and delete-the-minimum calls
+
+    /**
+     * Initializes an empty indexed priority queue with keys between 0 and maxN-1.
+     *
+     * @param maxN the keys on this priority queue are 0 through maxN-1
+     */
+    public IndexMinPQ(int maxN) {
+        if (maxN < 0) throw new IllegalArgumentException("maxN must be non-negative");
+        pq = new int[maxN + 1];
+        qp = new int[maxN];
+        priorities = new double[maxN];
+        Arrays.fill(qp, -1);
+    }
+
+    /**
+     * Returns true if this priority queue is empty.
+     *
+     * @return true if this priority queue is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    /**
+     * Returns the number of keys on this priority queue.
+     *
+     * @return the number of keys on this priority queue
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Returns true if the key is on this priority queue.
+     *
+     * @param i a key
+     * @return true if i is on this priority queue, false otherwise
+     */
+    public boolean contains(int i) {
+        return qp[i] != -1;
+    }
+
+    /**
+     * Returns the priority associated with a key on this priority queue.
+     *
+     * @param i a key
+     * @return the priority of key i
+     */
+    public double priorityOf(int i) {
+        if (!contains(i)) throw new NoSuchElementException("index is not in the priority queue");
+        return priorities[i];
+    }
+
+    /**
+     * Associates a priority with a key.
+     *
+     * @param i a key not already on this priority queue
+     * @param priority the priority to associate with key i
+     */
+    public void insert(int i, double priority) {
+        if (contains(i)) throw new IllegalArgumentException("index is already in the priority queue");
+        operations++;
+        n++;
+        qp[i] = n;
+        pq[n] = i;
+        priorities[i] = priority;
+        swim(n);
+    }
+
+    /**
+     * Lowers the priority associated with a key.
+     *
+     * @param i a key on this priority queue
+     * @param priority the new priority, which must not exceed the current one
+     */
+    public void decreaseKey(int i, double priority) {
+        if (!contains(i)) throw new NoSuchElementException("index is not in the priority queue");
+        if (priority > priorities[i]) throw new IllegalArgumentException("priority would increase");
+        operations++;
+        priorities[i] = priority;
+        swim(qp[i]);
+    }
+
+    /**
+     * Inserts the key if it is absent, or lowers its priority if it is present.
+     *
+     * @param i a key
+     * @param priority the priority to associate with key i
+     */
+    public void insertOrDecrease(int i, double priority) {
+        if (contains(i)) decreaseKey(i, priority);
+        else insert(i, priority);
+    }
+
+    /**
+     * Returns a key with the minimum priority.
+     *
+     * @return a key with the minimum priority
+     */
+    public int minIndex() {
+        if (n == 0) throw new NoSuchElementException("Priority queue underflow");
+        return pq[1];
+    }
+
+    /**
+     * Returns the minimum priority on this priority queue.
+     *
+     * @return the minimum priority
+     */
+    public double minPriority() {
+        if (n == 0) throw new NoSuchElementException("Priority queue underflow");
+        return priorities[pq[1]];
+    }
+
+    /**
+     * Removes a key with the minimum priority and returns it.
+     *
+     * @return a key with the minimum priority
+     */
+    public int delMin() {
+        if (n == 0) throw new NoSuchElementException("Priority queue underflow");
+        operations++;
+        int min = pq[1];
+        exch(1, n--);
+        sink(1);
+        qp[min] = -1;
+        return min;
+    }
+
+    /**
+     * Returns the number of insert, decrease-key, and delete-the-minimum operations
+     * performed on this priority queue since it was created.
+     *
+     * @return the number of heap operations
+     */
+    public long getOperationCount() {
+        return operations;
+    }
+
+    /**
+     * Removes every key, leaving the queue ready for another search.
+     * Takes time proportional to the number of keys still on the queue.
+     */
+    public void clear() {
+        for (int k = 1; k <= n; k++) {
+            qp[pq[k]] = -1;
+        }
+        n = 0;
+    }
+
+    /* Heap helper functions */
+    private boolean greater(int i, int j) {
+        return priorities[pq[i]] > priorities[pq[j]];
+    }
+
+    private void exch(int i, int j) {
+        int swap = pq[i];
+        pq[i] = pq[j];
+        pq[j] = swap;
+        qp[pq[i]] = i;
+        qp[pq[j]] = j;
+    }
+
+    private void swim(int k) {
+        while (k > 1 && greater(k / 2, k)) {
+            exch(k, k / 2);
+            k = k / 2;
+        }
+    }
+
+    private void sink(int k) {
+        while (2 * k <= n) {
+            int j = 2 * k;
+            if (j < n && greater(j, j + 1)) j++;
+            if (!greater(k, j)) break;
+            exch(k, j);
+            k = j;
+        }
+    }
+}
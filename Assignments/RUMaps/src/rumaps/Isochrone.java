@@ -0,0 +1,74 @@
+package rumaps;
+
+import java.util.ArrayList;
+
+/**
+ * The Isochrone class holds the part of the map that can be reached from a source
+ * intersection within a traffic budget, as computed by RUMaps.isochrone.
+ * It contains the following attributes:
+ * - source - the intersection the region is measured from
+ * - budget - the largest total traffic allowed on a path from the source
+ * - intersections - every intersection whose least traffic from the source is within the budget,
+ *   in order of increasing traffic
+ * - traffic - traffic[i] is the least traffic from the source to intersections.get(i)
+ * - blocks - blocks leaving a reachable intersection that can be driven to their end within the budget
+ * - boundaryBlocks - blocks leaving a reachable intersection on which the budget runs out
+ */
+public class Isochrone {
+    private final Intersection source;
+    private final double budget;
+    private final ArrayList<Intersection> intersections;
+    private final double[] traffic;
+    private final ArrayList<Block> blocks;
+    private final ArrayList<Block> boundaryBlocks;
+
+    public Isochrone(Intersection source, double budget, ArrayList<Intersection> intersections, double[] traffic,
+                     ArrayList<Block> blocks, ArrayList<Block> boundaryBlocks) {
+        this.source = source;
+        this.budget = budget;
+        this.intersections = intersections;
+        this.traffic = traffic;
+        this.blocks = blocks;
+        this.boundaryBlocks = boundaryBlocks;
+    }
+
+    public Intersection getSource() {
+        return source;
+    }
+
+    public double getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns a copy of the reachable intersections.
+     * @return the intersections within the budget, in order of increasing traffic from the source
+     */
+    public ArrayList<Intersection> getIntersections() {
+        return new ArrayList<>(intersections);
+    }
+
+    /**
+     * Returns a copy of the least traffic to each reachable intersection.
+     * @return the traffic to each intersection, in the same order as getIntersections()
+     */
+    public double[] getTraffic() {
+        return traffic.clone();
+    }
+
+    /**
+     * Returns a copy of the blocks that lie entirely within the budget.
+     * @return the blocks that can be driven to their end within the budget
+     */
+    public ArrayList<Block> getBlocks() {
+        return new ArrayList<>(blocks);
+    }
+
+    /**
+     * Returns a copy of the blocks that lie partly within the budget.
+     * @return the blocks, leaving a reachable intersection, on which the budget runs out
+     */
+    public ArrayList<Block> getBoundaryBlocks() {
+        return new ArrayList<>(boundaryBlocks);
+    }
+}
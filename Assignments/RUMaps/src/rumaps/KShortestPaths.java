@@ -0,0 +1,298 @@
+package rumaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+/**
+ * The KShortestPaths class finds the least-traffic loopless paths between two intersections
+ * of a CompactGraph in order of increasing traffic, using Yen's algorithm: each path after
+ * the first leaves an earlier one at some spur intersection and then takes the best way to
+ * the destination that avoids the earlier path's prefix and the blocks already tried there.
+ *
+ * Two things keep the spur searches small:
+ * - The tree of least-traffic paths into the destination is computed once, backward over
+ *   the incoming edges, and every spur search is an A* search guided by its distances.
+ *   Blocking intersections and blocks only makes paths longer, so they stay a consistent
+ *   heuristic, and a spur search that is not blocked just follows the tree.
+ * - A path only spurs from the intersection where it left its parent path onward
+ *   (Lawler's refinement), since earlier spur intersections were already tried for the parent.
+ *
+ * Paths are sequences of intersection indices. Between consecutive intersections a path
+ * uses the least-traffic block joining them, and blocking the step from a spur intersection
+ * to the next one blocks every block joining them, so no two paths visit the same sequence.
+ */
+public class KShortestPaths {
+    private final CompactGraph graph;
+    private final int source;
+    private final int target;
+
+    private final double[] toTarget;  // least traffic from each vertex to the target
+    private final int[] treeEdge;     // first edge on that path, -1 for the target and unreachable vertices
+
+    private final ArrayList<Path> found = new ArrayList<>();
+    private final PriorityQueue<Path> candidates = new PriorityQueue<>();
+    private final HashSet<Path> seen = new HashSet<>();
+    private int settledCount;
+
+    // Spur search arrays, reused between searches; entries tagged with the current stamp are live
+    private final double[] g;
+    private final int[] predEdge;
+    private final int[] closed;
+    private final int[] blockedVertex;
+    private final int[] blockedNext;
+    private final IndexMinPQ fringe;
+    private int stamp;
+
+    /**
+     * Prepares a query between two intersections, computing the tree of least-traffic paths
+     * into the target and the first path.
+     * @param graph the graph to search
+     * @param source the index of the starting intersection
+     * @param target the index of the destination intersection
+     */
+    public KShortestPaths(CompactGraph graph, int source, int target) {
+        this.graph = graph;
+        this.source = source;
+        this.target = target;
+        int n = graph.vertexCount();
+        toTarget = new double[n];
+        treeEdge = new int[n];
+        g = new double[n];
+        predEdge = new int[n];
+        closed = new int[n];
+        blockedVertex = new int[n];
+        blockedNext = new int[n];
+        fringe = new IndexMinPQ(n);
+
+        buildReverseTree();
+        if (toTarget[source] != Double.POSITIVE_INFINITY) {
+            int[] targets = graph.getTargets();
+            int length = 1;
+            for (int v = source; v != target; v = targets[treeEdge[v]]) {
+                length++;
+            }
+            int[] vertices = new int[length];
+            vertices[0] = source;
+            for (int i = 1; i < length; i++) {
+                vertices[i] = targets[treeEdge[vertices[i - 1]]];
+            }
+            Path first = new Path(vertices, toTarget[source], 0);
+            seen.add(first);
+            found.add(first);
+        }
+    }
+
+    /**
+     * Returns up to k least-traffic loopless paths, finding more of them if needed.
+     * @param k the number of paths wanted
+     * @return the paths as intersection index sequences, in order of increasing traffic;
+     *         fewer than k if there are not that many
+     */
+    public ArrayList<int[]> paths(int k) {
+        while (found.size() < k && !found.isEmpty()) {
+            spur(found.get(found.size() - 1));
+            Path next = candidates.poll();
+            if (next == null) {
+                break;
+            }
+            found.add(next);
+        }
+        ArrayList<int[]> paths = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, found.size()); i++) {
+            paths.add(found.get(i).vertices.clone());
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the total traffic of a path found earlier.
+     * @param i the position of the path, as in paths(k)
+     * @return the traffic of the i-th least-traffic path
+     */
+    public double trafficOf(int i) {
+        return found.get(i).cost;
+    }
+
+    /**
+     * Returns the number of intersections settled by all spur searches so far.
+     * @return the number of intersections settled
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    private void buildReverseTree() {
+        int[] sources = graph.getSources();
+        int[] reverseOffsets = graph.getReverseOffsets();
+        int[] reverseEdges = graph.getReverseEdges();
+        double[] traffic = graph.getTraffic();
+        Arrays.fill(toTarget, Double.POSITIVE_INFINITY);
+        Arrays.fill(treeEdge, -1);
+
+        toTarget[target] = 0;
+        fringe.insert(target, 0);
+        while (!fringe.isEmpty()) {
+            int v = fringe.delMin();
+            for (int k = reverseOffsets[v]; k < reverseOffsets[v + 1]; k++) {
+                int e = reverseEdges[k];
+                int u = sources[e];
+                double newDist = toTarget[v] + traffic[e];
+                if (newDist < toTarget[u]) {
+                    toTarget[u] = newDist;
+                    treeEdge[u] = e;
+                    fringe.insertOrDecrease(u, newDist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the candidates that leave a path at each intersection from where it
+     * left its parent up to the one before the target.
+     */
+    private void spur(Path path) {
+        int[] vertices = path.vertices;
+        double rootCost = 0;
+        for (int i = 0; i < vertices.length - 1; i++) {
+            if (i >= path.deviation) {
+                newStamp();
+                for (int j = 0; j < i; j++) {
+                    blockedVertex[vertices[j]] = stamp;
+                }
+                for (Path other : found) {
+                    if (other.vertices.length > i + 1 && sharesPrefix(other.vertices, vertices, i)) {
+                        blockedNext[other.vertices[i + 1]] = stamp;
+                    }
+                }
+                int[] spurPath = search(vertices[i]);
+                if (spurPath != null) {
+                    int[] candidate = Arrays.copyOf(vertices, i + spurPath.length);
+                    System.arraycopy(spurPath, 0, candidate, i, spurPath.length);
+                    Path next = new Path(candidate, rootCost + g[target], i);
+                    if (seen.add(next)) {
+                        candidates.add(next);
+                    }
+                }
+            }
+            rootCost += stepCost(vertices[i], vertices[i + 1]);
+        }
+    }
+
+    /**
+     * Runs an A* search from the spur intersection to the target that avoids the
+     * blocked intersections and, from the spur intersection, the blocked next steps.
+     * @return the intersections on the path found, from spur to target, or null if there is none
+     */
+    private int[] search(int spur) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+
+        g[spur] = 0;
+        predEdge[spur] = -1;
+        closed[spur] = -stamp;  // reached but not settled
+        fringe.insert(spur, toTarget[spur]);
+        boolean reachedTarget = false;
+        while (!fringe.isEmpty()) {
+            int u = fringe.delMin();
+            closed[u] = stamp;
+            settledCount++;
+            if (u == target) {
+                reachedTarget = true;
+                break;
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                if (closed[v] == stamp || blockedVertex[v] == stamp || toTarget[v] == Double.POSITIVE_INFINITY) continue;
+                if (u == spur && blockedNext[v] == stamp) continue;
+                double newDist = g[u] + traffic[e];
+                if (closed[v] != -stamp || newDist < g[v]) {
+                    g[v] = newDist;
+                    predEdge[v] = e;
+                    closed[v] = -stamp;
+                    fringe.insertOrDecrease(v, newDist + toTarget[v]);
+                }
+            }
+        }
+        fringe.clear();
+        if (!reachedTarget) {
+            return null;
+        }
+
+        int length = 1;
+        for (int v = target; v != spur; v = graph.getSources()[predEdge[v]]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int v = target; ; v = graph.getSources()[predEdge[v]]) {
+            path[--length] = v;
+            if (v == spur) break;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the traffic of the least-traffic block from u to v.
+     */
+    private double stepCost(int u, int v) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        double best = Double.POSITIVE_INFINITY;
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            if (targets[e] == v) best = Math.min(best, traffic[e]);
+        }
+        return best;
+    }
+
+    private static boolean sharesPrefix(int[] a, int[] b, int i) {
+        for (int j = 0; j <= i; j++) {
+            if (a[j] != b[j]) return false;
+        }
+        return true;
+    }
+
+    private void newStamp() {
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            // Start over before the negated stamps could collide with old ones
+            Arrays.fill(closed, 0);
+            Arrays.fill(blockedVertex, 0);
+            Arrays.fill(blockedNext, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * A path found or waiting to be chosen, along with its traffic and the position
+     * of the intersection where it left its parent path.
+     */
+    private static class Path implements Comparable<Path> {
+        private final int[] vertices;
+        private final double cost;
+        private final int deviation;
+
+        Path(int[] vertices, double cost, int deviation) {
+            this.vertices = vertices;
+            this.cost = cost;
+            this.deviation = deviation;
+        }
+
+        @Override
+        public int compareTo(Path other) {
+            return Double.compare(cost, other.cost);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Path && Arrays.equals(vertices, ((Path) obj).vertices);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(vertices);
+        }
+    }
+}
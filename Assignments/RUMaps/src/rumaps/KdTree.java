@@ -0,0 +1,247 @@
+package rumaps;
+
+import java.util.Arrays;
+
+/**
+ * The KdTree class is a 2-d tree over points with int ids, used by Network and MapPanel to
+ * find the intersections nearest to an arbitrary coordinate, or inside a rectangle, in
+ * O(log n) expected time plus the number of points reported.
+ *
+ * The tree is balanced and stored implicitly: the points of each subtree occupy a range
+ * of the arrays, the median (by x at even depths, by y at odd depths) in the middle, the
+ * smaller ones before it and the larger ones after it. Distances are Euclidean; among
+ * points at the same distance, the one with the smaller id is nearer.
+ */
+public class KdTree {
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] ids;
+
+    /**
+     * Builds the tree over a set of points.
+     * @param xs the x-coordinate of each point
+     * @param ys the y-coordinate of each point
+     * @param ids the id of each point
+     * @param count the number of points, which are the first count entries of each array
+     */
+    public KdTree(int[] xs, int[] ys, int[] ids, int count) {
+        this.xs = Arrays.copyOf(xs, count);
+        this.ys = Arrays.copyOf(ys, count);
+        this.ids = Arrays.copyOf(ids, count);
+        build(0, count, 0);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns the id of the point nearest to (x, y).
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the id, or -1 if the tree is empty
+     */
+    public int nearest(int x, int y) {
+        int[] found = nearest(x, y, 1);
+        return found.length == 0 ? -1 : found[0];
+    }
+
+    /**
+     * Returns the ids of the k points nearest to (x, y).
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param k the number of points wanted
+     * @return the ids, nearest first; fewer than k if the tree has fewer points
+     */
+    public int[] nearest(int x, int y, int k) {
+        Best best = new Best(Math.max(0, Math.min(k, ids.length)));
+        if (best.capacity > 0) {
+            search(0, ids.length, 0, x, y, best);
+        }
+        return best.sorted();
+    }
+
+    /**
+     * Returns the ids of the points inside a rectangle, borders included.
+     * @param minX the left edge
+     * @param minY the top edge
+     * @param maxX the right edge
+     * @param maxY the bottom edge
+     * @return the ids, in increasing order
+     */
+    public int[] inRange(int minX, int minY, int maxX, int maxY) {
+        Found found = new Found();
+        range(0, ids.length, 0, minX, minY, maxX, maxY, found);
+        int[] result = Arrays.copyOf(found.ids, found.size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, depth % 2 == 0);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    private void search(int lo, int hi, int depth, int x, int y, Best best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        long dx = xs[mid] - (long) x;
+        long dy = ys[mid] - (long) y;
+        best.offer(ids[mid], dx * dx + dy * dy);
+
+        long split = depth % 2 == 0 ? dx : dy;
+        // Search the side of the splitting line holding (x, y) first; the other side can only
+        // hold nearer points if the line is no farther than the k-th nearest point found so far
+        if (split > 0) {
+            search(lo, mid, depth + 1, x, y, best);
+            if (best.admits(split * split)) search(mid + 1, hi, depth + 1, x, y, best);
+        } else {
+            search(mid + 1, hi, depth + 1, x, y, best);
+            if (best.admits(split * split)) search(lo, mid, depth + 1, x, y, best);
+        }
+    }
+
+    private void range(int lo, int hi, int depth, int minX, int minY, int maxX, int maxY, Found found) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int x = xs[mid], y = ys[mid];
+        if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+            found.add(ids[mid]);
+        }
+        // Points before the median are no larger along the axis and points after it no
+        // smaller, so a side can only be skipped when the rectangle lies wholly past the median
+        int split = depth % 2 == 0 ? x : y;
+        if ((depth % 2 == 0 ? minX : minY) <= split) range(lo, mid, depth + 1, minX, minY, maxX, maxY, found);
+        if ((depth % 2 == 0 ? maxX : maxY) >= split) range(mid + 1, hi, depth + 1, minX, minY, maxX, maxY, found);
+    }
+
+    /**
+     * Rearranges the points in [lo, hi] so that the one at position k has the k-th smallest
+     * coordinate along the axis, with none larger before it and none smaller after it.
+     */
+    private void select(int lo, int hi, int k, boolean byX) {
+        int[] keys = byX ? xs : ys;
+        while (lo < hi) {
+            int pivot = keys[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int t = xs[i]; xs[i] = xs[j]; xs[j] = t;
+        t = ys[i]; ys[i] = ys[j]; ys[j] = t;
+        t = ids[i]; ids[i] = ids[j]; ids[j] = t;
+    }
+
+    /**
+     * The ids found by a range query, in a growable array.
+     */
+    private static class Found {
+        private int[] ids = new int[16];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, 2 * size);
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * The k nearest points found so far, kept in a binary max-heap so the
+     * farthest of them can be replaced when a nearer point is found.
+     */
+    private static class Best {
+        private final int capacity;
+        private final int[] ids;
+        private final long[] distances;
+        private int size;
+
+        Best(int capacity) {
+            this.capacity = capacity;
+            ids = new int[capacity];
+            distances = new long[capacity];
+        }
+
+        /**
+         * Returns whether a point at the given squared distance could be among the k nearest.
+         */
+        boolean admits(long distance) {
+            return size < capacity || distance <= distances[0];
+        }
+
+        void offer(int id, long distance) {
+            if (size < capacity) {
+                ids[size] = id;
+                distances[size] = distance;
+                siftUp(size++);
+            } else if (farther(ids[0], distances[0], id, distance)) {
+                ids[0] = id;
+                distances[0] = distance;
+                siftDown(0);
+            }
+        }
+
+        int[] sorted() {
+            int[] result = new int[size];
+            while (size > 0) {
+                result[size - 1] = ids[0];
+                size--;
+                ids[0] = ids[size];
+                distances[0] = distances[size];
+                siftDown(0);
+            }
+            return result;
+        }
+
+        private static boolean farther(int a, long distanceA, int b, long distanceB) {
+            return distanceA > distanceB || (distanceA == distanceB && a > b);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!farther(ids[i], distances[i], ids[parent], distances[parent])) break;
+                exchange(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && farther(ids[child + 1], distances[child + 1], ids[child], distances[child])) child++;
+                if (!farther(ids[child], distances[child], ids[i], distances[i])) break;
+                exchange(i, child);
+                i = child;
+            }
+        }
+
+        private void exchange(int i, int j) {
+            int t = ids[i]; ids[i] = ids[j]; ids[j] = t;
+            long d = distances[i]; distances[i] = distances[j]; distances[j] = d;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package rumaps;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The Landmarks class precomputes least-traffic distances between a few landmark
+ * intersections and every intersection of a CompactGraph, for A* searches guided by
+ * the triangle inequality (ALT). For a landmark L and any intersections v and t,
+ *   traffic(v, t) >= traffic(L, t) - traffic(L, v)  and  traffic(v, t) >= traffic(v, L) - traffic(t, L)
+ * so the largest of these over all landmarks is a lower bound on the traffic from v to t.
+ * Each bound is consistent, and so is their maximum. Unlike the straight-line bound, it
+ * follows the actual traffic of the streets, so it stays close to the true traffic even
+ * where traffic factors vary a lot.
+ *
+ * Landmarks are chosen far apart: the first is the intersection farthest from an
+ * arbitrary one, and each next one is the intersection farthest from all landmarks so far.
+ * Intersections unreachable from every landmark so far are taken first, so each connected
+ * part of the map gets a landmark before any part gets a second one.
+ *
+ * The tables depend on the traffic of every block, so they must be rebuilt if traffic
+ * changes. They can be saved to a file and loaded back on a later run; the file records
+ * a checksum of the graph's edges and traffic, and loading it for a different graph fails.
+ * The file is big-endian. Its layout is:
+ * - header - magic number, format version, number of intersections, number of edges,
+ *   checksum, number of landmarks
+ * - landmarks - index of each
+ * - distances - for each landmark, traffic from it to every intersection,
+ *   then traffic from every intersection to it
+ */
+public class Landmarks {
+    private static final int MAGIC = 0x52554D4C; // "RUML"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final CompactGraph graph;
+    private final int[] landmarks;
+    // from[l * n + v] is the traffic from landmark l to v, to[l * n + v] from v to landmark l
+    private final double[] from;
+    private final double[] to;
+
+    private Landmarks(CompactGraph graph, int[] landmarks, double[] from, double[] to) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Chooses landmarks and computes their distance tables.
+     *
+     * @param graph the graph to preprocess
+     * @param count the number of landmarks wanted; fewer are used if the graph has
+     *              fewer intersections with blocks
+     * @return the landmark tables
+     */
+    public static Landmarks select(CompactGraph graph, int count) {
+        int n = graph.vertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] reverseOffsets = graph.getReverseOffsets();
+        int[] chosen = new int[Math.max(count, 0)];
+        double[] from = new double[chosen.length * n];
+        double[] to = new double[chosen.length * n];
+
+        // nearest[v] is the traffic to v from the closest landmark so far
+        double[] nearest = new double[n];
+        double[] dist = new double[n];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        int first = -1;
+        for (int v = 0; v < n && first == -1; v++) {
+            if (offsets[v + 1] > offsets[v]) first = v;
+        }
+        if (first == -1) {
+            return new Landmarks(graph, new int[0], new double[0], new double[0]);
+        }
+        distances(graph, first, false, dist);
+        int next = farthest(dist);
+
+        int k = 0;
+        while (k < chosen.length && next != -1) {
+            chosen[k] = next;
+            distances(graph, next, false, dist);
+            System.arraycopy(dist, 0, from, k * n, n);
+            distances(graph, next, true, dist);
+            System.arraycopy(dist, 0, to, k * n, n);
+            k++;
+
+            next = -1;
+            double best = -1;
+            for (int v = 0; v < n; v++) {
+                nearest[v] = Math.min(nearest[v], from[(k - 1) * n + v]);
+                boolean hasBlocks = offsets[v + 1] > offsets[v] || reverseOffsets[v + 1] > reverseOffsets[v];
+                if (hasBlocks && nearest[v] > best && nearest[v] > 0) {
+                    best = nearest[v];
+                    next = v;
+                }
+            }
+        }
+        return new Landmarks(graph, Arrays.copyOf(chosen, k), Arrays.copyOf(from, k * n), Arrays.copyOf(to, k * n));
+    }
+
+    /**
+     * Returns a lower bound on the traffic of any path from v to t.
+     * @param v the index of the first intersection
+     * @param t the index of the destination intersection
+     * @return the largest landmark bound, or 0 if no landmark gives one
+     */
+    public double lowerBound(int v, int t) {
+        int n = graph.vertexCount();
+        double bound = 0;
+        for (int l = 0, base = 0; l < landmarks.length; l++, base += n) {
+            double forward = from[base + t] - from[base + v];
+            double backward = to[base + v] - to[base + t];
+            // A difference with an infinite term says nothing
+            if (forward > bound && forward != Double.POSITIVE_INFINITY) bound = forward;
+            if (backward > bound && backward != Double.POSITIVE_INFINITY) bound = backward;
+        }
+        return bound;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the landmarks.
+     * @return a copy of the landmark intersection indices, in the order they were chosen
+     */
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    /**
+     * Saves the tables to a file.
+     *
+     * @param filename the name of the file to write
+     */
+    public void save(String filename) {
+        int n = graph.vertexCount();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(graph.edgeCount());
+            out.writeLong(checksum(graph));
+            out.writeInt(landmarks.length);
+            for (int landmark : landmarks) {
+                out.writeInt(landmark);
+            }
+            for (int l = 0; l < landmarks.length; l++) {
+                for (int v = 0; v < n; v++) {
+                    out.writeDouble(from[l * n + v]);
+                }
+                for (int v = 0; v < n; v++) {
+                    out.writeDouble(to[l * n + v]);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not write " + filename, ioe);
+        }
+    }
+
+    /**
+     * Loads tables saved for a graph.
+     *
+     * @param graph the graph the tables are for
+     * @param filename the name of the file to read
+     * @return the landmark tables
+     * @throws IllegalStateException if the file is not a landmark file, or was saved for
+     *         a different graph or different traffic
+     */
+    public static Landmarks load(CompactGraph graph, String filename) {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not open " + filename, ioe);
+        }
+        if (in.limit() < HEADER_BYTES || in.getInt() != MAGIC) {
+            throw new IllegalStateException(filename + " is not a landmark file");
+        }
+        if (in.getInt() != VERSION) {
+            throw new IllegalStateException(filename + " has an unsupported landmark file version");
+        }
+        int n = in.getInt();
+        int m = in.getInt();
+        long checksum = in.getLong();
+        if (n != graph.vertexCount() || m != graph.edgeCount() || checksum != checksum(graph)) {
+            throw new IllegalStateException(filename + " was saved for a different map or different traffic");
+        }
+        int count = in.getInt();
+        if (count < 0 || in.remaining() != (long) count * Integer.BYTES + 2L * count * n * Double.BYTES) {
+            throw new IllegalStateException(filename + " is truncated or corrupt");
+        }
+
+        int[] landmarks = new int[count];
+        for (int l = 0; l < count; l++) {
+            landmarks[l] = in.getInt();
+        }
+        double[] from = new double[count * n];
+        double[] to = new double[count * n];
+        for (int l = 0; l < count; l++) {
+            in.asDoubleBuffer().get(from, l * n, n);
+            in.position(in.position() + n * Double.BYTES);
+            in.asDoubleBuffer().get(to, l * n, n);
+            in.position(in.position() + n * Double.BYTES);
+        }
+        return new Landmarks(graph, landmarks, from, to);
+    }
+
+    /**
+     * Hashes the structure and traffic of a graph, so tables saved for it can be recognized.
+     */
+    private static long checksum(CompactGraph graph) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        long hash = 1125899906842597L;
+        for (int offset : offsets) {
+            hash = 31 * hash + offset;
+        }
+        for (int e = 0; e < targets.length; e++) {
+            hash = 31 * hash + targets[e];
+            hash = 31 * hash + Double.doubleToLongBits(traffic[e]);
+        }
+        return hash;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from a vertex over all edges, or over all edges reversed.
+     * @param dist filled with the traffic from (or, reversed, to) the vertex; infinite if unreachable
+     */
+    private static void distances(CompactGraph graph, int root, boolean reversed, double[] dist) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        int[] sources = graph.getSources();
+        int[] reverseOffsets = graph.getReverseOffsets();
+        int[] reverseEdges = graph.getReverseEdges();
+        double[] traffic = graph.getTraffic();
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        IndexMinPQ fringe = new IndexMinPQ(dist.length);
+
+        dist[root] = 0;
+        fringe.insert(root, 0);
+        while (!fringe.isEmpty()) {
+            int u = fringe.delMin();
+            int begin = reversed ? reverseOffsets[u] : offsets[u];
+            int end = reversed ? reverseOffsets[u + 1] : offsets[u + 1];
+            for (int k = begin; k < end; k++) {
+                int e = reversed ? reverseEdges[k] : k;
+                int v = reversed ? sources[e] : targets[e];
+                double newDist = dist[u] + traffic[e];
+                if (newDist < dist[v]) {
+                    dist[v] = newDist;
+                    fringe.insertOrDecrease(v, newDist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the reachable vertex with the greatest finite distance, or -1 if there is none.
+     */
+    private static int farthest(double[] dist) {
+        int far = -1;
+        for (int v = 0; v < dist.length; v++) {
+            if (dist[v] != Double.POSITIVE_INFINITY && (far == -1 || dist[v] > dist[far])) {
+                far = v;
+            }
+        }
+        return far;
+    }
+}
@@ -0,0 +1,252 @@
+package rumaps;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The MapLoader class reads a map input file into a RUMaps object without going through
+ * StdIn. It produces the same network as the RUMaps(MapPanel, String) constructor.
+ *
+ * The file is memory-mapped and read with a byte-level tokenizer into primitive arrays
+ * (one entry per block, with all block points in two shared x/y arrays). The network is
+ * then built from those arrays: block lengths are summed from the raw points, and the
+ * only objects allocated are the ones the network keeps, the two Blocks per street block
+ * (each with its path) and a Coordinate per point.
+ * Traffic factors are drawn through RUMaps.blockTrafficFactor in adjacency list order,
+ * exactly as the constructor does, so the same StdRandom seed gives the same traffic.
+ *
+ * The input format is:
+ * - number of intersections, number of streets
+ * - for each street: its name on its own line, then its number of blocks
+ * - for each block: block number, number of points, road size, then one x y pair per point
+ */
+public class MapLoader {
+    private final Tokenizer in;
+
+    private int numIntersections;
+    private String[] streetNames;
+
+    // Per block, in file order
+    private int blockCount;
+    private int[] blockStreets;
+    private int[] blockNumbers;
+    private double[] roadSizes;
+    private int[] pointOffsets;  // points of block b are pointOffsets[b] through pointOffsets[b + 1] - 1
+
+    // All block points
+    private int pointCount;
+    private int[] xs;
+    private int[] ys;
+
+    private MapLoader(String filename) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            in = new Tokenizer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not open " + filename, ioe);
+        }
+    }
+
+    /**
+     * Loads a map file and builds its network.
+     *
+     * @param mapPanel The map panel to display the map, or null
+     * @param filename The name of the file containing the street information
+     * @return a RUMaps object for the map
+     */
+    public static RUMaps load(MapPanel mapPanel, String filename) {
+        MapLoader loader = new MapLoader(filename);
+        loader.parse();
+        return loader.build(mapPanel);
+    }
+
+    private void parse() {
+        numIntersections = in.readInt();
+        int numStreets = in.readInt();
+        in.readLine();
+
+        streetNames = new String[numStreets];
+        blockStreets = new int[Math.max(16, numStreets)];
+        blockNumbers = new int[blockStreets.length];
+        roadSizes = new double[blockStreets.length];
+        pointOffsets = new int[blockStreets.length + 1];
+        xs = new int[4 * blockStreets.length];
+        ys = new int[xs.length];
+
+        for (int street = 0; street < numStreets; street++) {
+            streetNames[street] = in.readLine();
+            int numBlocks = in.readInt();
+            for (int j = 0; j < numBlocks; j++) {
+                if (blockCount == blockStreets.length) {
+                    int capacity = 2 * blockCount;
+                    blockStreets = Arrays.copyOf(blockStreets, capacity);
+                    blockNumbers = Arrays.copyOf(blockNumbers, capacity);
+                    roadSizes = Arrays.copyOf(roadSizes, capacity);
+                    pointOffsets = Arrays.copyOf(pointOffsets, capacity + 1);
+                }
+                blockStreets[blockCount] = street;
+                blockNumbers[blockCount] = in.readInt();
+                int numPoints = in.readInt();
+                roadSizes[blockCount] = in.readDouble();
+                if (pointCount + numPoints > xs.length) {
+                    int capacity = Math.max(2 * xs.length, pointCount + numPoints);
+                    xs = Arrays.copyOf(xs, capacity);
+                    ys = Arrays.copyOf(ys, capacity);
+                }
+                for (int k = 0; k < numPoints; k++) {
+                    xs[pointCount] = in.readInt();
+                    ys[pointCount] = in.readInt();
+                    pointCount++;
+                }
+                blockCount++;
+                pointOffsets[blockCount] = pointCount;
+                in.readLine();
+            }
+        }
+    }
+
+    private RUMaps build(MapPanel mapPanel) {
+        Network network = new Network(numIntersections, mapPanel);
+        RUMaps rumaps = new RUMaps(network);
+
+        for (int b = 0; b < blockCount; b++) {
+            int first = pointOffsets[b];
+            int last = pointOffsets[b + 1] - 1;
+
+            Block block = new Block(roadSizes[b], streetNames[blockStreets[b]], blockNumbers[b]);
+            block.startPoint(new Coordinate(xs[first], ys[first]));
+            double length = 0;
+            for (int p = first + 1; p <= last; p++) {
+                block.nextPoint(new Coordinate(xs[p], ys[p]));
+                // Same operations as RUMaps.blockLength, so the sums are identical
+                double dx = xs[p - 1] - xs[p];
+                double dy = ys[p - 1] - ys[p];
+                length += Math.sqrt(dx * dx + dy * dy);
+            }
+            block.setLength(length);
+
+            int startIndex = findOrAdd(network, block.getCoordinatePoints().get(0));
+            int endIndex = findOrAdd(network, block.getCoordinatePoints().get(last - first));
+            Intersection startIntersection = network.getIntersections()[startIndex];
+            Intersection endIntersection = network.getIntersections()[endIndex];
+
+            Block reversedBlock = block.copy();
+            block.setFirstEndpoint(startIntersection);
+            block.setLastEndpoint(endIntersection);
+            reversedBlock.setFirstEndpoint(endIntersection);
+            reversedBlock.setLastEndpoint(startIntersection);
+            network.addEdge(startIndex, block);
+            network.addEdge(endIndex, reversedBlock);
+        }
+
+        for (Block block : network.getAdjacencyList()) {
+            for (Block ptr = block; ptr != null; ptr = ptr.getNext()) {
+                ptr.setTrafficFactor(rumaps.blockTrafficFactor(ptr));
+                ptr.setTraffic(rumaps.blockTraffic(ptr));
+            }
+        }
+        return rumaps;
+    }
+
+    private static int findOrAdd(Network network, Coordinate c) {
+        int index = network.findIntersection(c);
+        if (index == -1) {
+            index = network.getNextIndex();
+            network.addIntersection(new Intersection(c));
+        }
+        return index;
+    }
+
+    /**
+     * Reads whitespace-separated numbers and whole lines from a buffer of ASCII/UTF-8 bytes,
+     * following the same conventions as StdIn.readInt, readDouble and readLine, except that
+     * a number may be at most 64 characters long.
+     */
+    private static class Tokenizer {
+        private final MappedByteBuffer buffer;
+        private final int limit;
+        private int position;
+        private final byte[] token = new byte[64];
+
+        private Tokenizer(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.limit = buffer.limit();
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+        }
+
+        private void skipWhitespace() {
+            while (position < limit && isWhitespace(buffer.get(position))) {
+                position++;
+            }
+            if (position == limit) {
+                throw new IllegalStateException("Unexpected end of map file");
+            }
+        }
+
+        private int readInt() {
+            skipWhitespace();
+            if (position >= limit) {
+                throw new IllegalStateException("Unexpected end of map file");
+            }
+            boolean negative = buffer.get(position) == '-';
+            if (negative || buffer.get(position) == '+') position++;
+            // Accumulate the negated value, whose range reaches Integer.MIN_VALUE
+            int value = 0;
+            int start = position;
+            try {
+                while (position < limit) {
+                    byte b = buffer.get(position);
+                    if (b < '0' || b > '9') break;
+                    value = Math.subtractExact(Math.multiplyExact(value, 10), b - '0');
+                    position++;
+                }
+                if (position == start || (position < limit && !isWhitespace(buffer.get(position)))) {
+                    throw new IllegalStateException("Expected an integer at byte " + start + " of map file");
+                }
+                return negative ? value : Math.negateExact(value);
+            } catch (ArithmeticException e) {
+                throw new IllegalStateException("Integer out of range at byte " + start + " of map file");
+            }
+        }
+
+        private double readDouble() {
+            skipWhitespace();
+            int start = position;
+            int length = 0;
+            while (position < limit && !isWhitespace(buffer.get(position))) {
+                if (length == token.length) {
+                    throw new IllegalStateException("Number longer than " + token.length + " characters at byte " + start + " of map file");
+                }
+                token[length++] = buffer.get(position++);
+            }
+            try {
+                return Double.parseDouble(new String(token, 0, length, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Expected a number at byte " + start + " of map file");
+            }
+        }
+
+        /**
+         * Returns the rest of the current line without its line separator, and moves to the next line.
+         */
+        private String readLine() {
+            int start = position;
+            while (position < limit && buffer.get(position) != '\n' && buffer.get(position) != '\r') {
+                position++;
+            }
+            byte[] line = new byte[position - start];
+            buffer.get(start, line);
+            if (position < limit && buffer.get(position) == '\r') position++;
+            if (position < limit && buffer.get(position) == '\n') position++;
+            return new String(line, StandardCharsets.UTF_8);
+        }
+    }
+}
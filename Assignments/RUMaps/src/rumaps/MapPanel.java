@@ -3,6 +3,8 @@ package rumaps;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.*;
 import java.util.List;
 
@@ -18,6 +20,13 @@ public class MapPanel extends JPanel {
 
     private final Color backgroundColor = Color.BLACK;
 
+    // Cell size of the hit-testing grids, and how close (in pixels) the mouse must be to an intersection
+    private final int GRID_CELL_SIZE = 32;
+    private final int INTERSECTION_RADIUS = 5;
+    // Past 1 / REDRAW_ALL_FRACTION of the intersections, a repaint redraws every intersection
+    // rather than each covered one separately
+    private final int REDRAW_ALL_FRACTION = 8;
+
     public final Color minimizeIntersectionPathColor = Color.red;
     private final Color hoverMinimizeIntersectionPathColor = new Color(255, 0, 0, 125);
 
@@ -27,9 +36,21 @@ public class MapPanel extends JPanel {
     private final Color combinedPathColor = new Color(189, 0, 189);
     private final Color hoverCombinedPathColor = new Color(189, 0, 189, 125);
 
+    private final Color isochroneColor = new Color(0, 170, 80, 170);
+    private final Color isochroneBoundaryColor = new Color(255, 170, 0, 170);
+
     private final Color defaultBlockColor = Color.WHITE;
     private final Color hoverDefaultBlockColor = new Color(210,212,213, 150);
 
+    private final Color intersectionColor = new Color(255, 255, 255, 210);
+    private final Color intersectionCenterColor = Color.BLACK;
+    private final Color intersectionDotColor = Color.WHITE;
+    private final Color selectedIntersectionColor = new Color(15, 83, 255);
+    private final Color hoverSelectedIntersectionColor = new Color(15, 83, 255, 150);
+    private final Color hoverIntersectionColor = new Color(0, 0, 0, 100);
+    // Dots are filled with the default stroke set; a wide stroke changes how ovals are filled
+    private final BasicStroke intersectionStroke = new BasicStroke();
+
     private Driver driver;
     private String[] imagePaths;
     private Image satelliteImage;
@@ -38,16 +59,29 @@ public class MapPanel extends JPanel {
     private boolean networkVisualsActivated;
 
     private List<Block> blocks;
+    // blockHitShapes.get(i) is the area in which the mouse is over blocks.get(i)
+    private List<Shape> blockHitShapes;
+    private SpatialGrid blockGrid;
     private HashSet<Block> highlightedMinimizeIntersectionPath;
     private boolean highlightedMinimizeIntersectionPathActivated;
     private HashSet<Block> highlightedFastestPath;
     private boolean highlightedFastestPathActivated;
     private Block highlightedBlock;
+    private Isochrone highlightedIsochrone;
 
     private List<Intersection> intersections;
     private Intersection selectedStartIntersection;
     private Intersection selectedEndIntersection;
     private Intersection highlightedIntersection;
+    // 2-d tree over the indices of intersections, and for each block drawn highlighted so far,
+    // the indices of the intersections whose dots it may cover; both reset with the network layer
+    private KdTree intersectionTree;
+    private HashMap<Block, int[]> dotsUnderBlock;
+
+    // Cached layers, rendered on the next paint after they are set to null
+    private BufferedImage backgroundLayer;    // satellite image and overlay
+    private BufferedImage blockLayer;         // background layer plus every block in its default color
+    private BufferedImage networkLayer;       // block layer plus every intersection in its default look
 
     public MapPanel(Driver driver, String[] imagePaths, double overlayTransparency) {
         this.driver = driver;
@@ -60,6 +94,8 @@ public class MapPanel extends JPanel {
         networkVisualsActivated = true;
         
         blocks = new ArrayList<>();
+        blockHitShapes = new ArrayList<>();
+        blockGrid = new SpatialGrid(WIDTH, HEIGHT, GRID_CELL_SIZE);
         highlightedMinimizeIntersectionPath = new HashSet<>();
         highlightedMinimizeIntersectionPathActivated = true;
         highlightedFastestPath = new HashSet<>();
@@ -76,16 +112,19 @@ public class MapPanel extends JPanel {
     /* Map Visuals */
     public void enableSatellite() {
         satelliteImage = new ImageIcon(imagePaths[0]).getImage();
+        invalidateBackground();
         repaint();
     }
 
     public void disableSatellite() {
         satelliteImage = null;
+        invalidateBackground();
         repaint();
     }
 
     public void changeTransparency(double transparancy) {
         overlayTransparency = transparancy;
+        invalidateBackground();
         repaint();
     }
 
@@ -96,7 +135,14 @@ public class MapPanel extends JPanel {
 
     /* Block Visuals */
     public void addBlock(Block block) {
+        BasicStroke stroke = new BasicStroke(Math.max(10, block.getRoadSize() * 2));
+        Shape hitShape = stroke.createStrokedShape(block.getPath());
+        Rectangle2D bounds = hitShape.getBounds2D();
+        blockGrid.insert(blocks.size(), bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
         blocks.add(block);
+        blockHitShapes.add(hitShape);
+        blockLayer = null;
+        networkLayer = null;
         repaint();
     }
 
@@ -164,9 +210,19 @@ public class MapPanel extends JPanel {
         repaint();
     }
 
+    /**
+     * Shades the blocks of a reachable region under the highlighted paths.
+     * @param isochrone the region to show, or null to remove it
+     */
+    public void highlightIsochrone(Isochrone isochrone) {
+        highlightedIsochrone = isochrone;
+        repaint();
+    }
+
     /* Intersection Visuals */
     public void addIntersection(Intersection intersection) {
-        intersections.add(intersection);;
+        intersections.add(intersection);
+        networkLayer = null;
         repaint();
     }
 
@@ -196,6 +252,32 @@ public class MapPanel extends JPanel {
         if (driver != null) driver.updatePathInfo(selectedStartIntersection, selectedEndIntersection);
     }
 
+    /**
+     * Returns the intersection nearest to a point among those within INTERSECTION_RADIUS
+     * pixels of it along both axes, or null if there is none. The candidates are the
+     * intersections the network's 2-d tree finds in that square.
+     */
+    private Intersection intersectionAt(int x, int y) {
+        if (driver == null || driver.getMaps() == null) {
+            return null;
+        }
+        Network network = driver.getMaps().getRutgers();
+        Intersection nearest = null;
+        long nearestDistance = Long.MAX_VALUE;
+        for (int i : network.intersectionsInRange(x - INTERSECTION_RADIUS, y - INTERSECTION_RADIUS,
+                                                  x + INTERSECTION_RADIUS, y + INTERSECTION_RADIUS)) {
+            Intersection intersection = network.getIntersections()[i];
+            long dx = intersection.getCoordinate().getX() - x;
+            long dy = intersection.getCoordinate().getY() - y;
+            // Indices come in increasing order, so the lowest wins among those at the same distance
+            if (dx * dx + dy * dy < nearestDistance) {
+                nearest = intersection;
+                nearestDistance = dx * dx + dy * dy;
+            }
+        }
+        return nearest;
+    }
+
     private void mouseListener() {
         this.addMouseMotionListener(new MouseMotionAdapter() {
             @Override
@@ -203,12 +285,9 @@ public class MapPanel extends JPanel {
                 final int x = e.getX();
                 final int y = e.getY();
                 Block newHighlightedBlock = null;
-                for (Block block : blocks) {
-                    BasicStroke stroke = new BasicStroke(Math.max(10, block.getRoadSize() * 2));
-                    Shape strokedShape = stroke.createStrokedShape(block.getPath());
-                    
-                    if (strokedShape.contains(x, y)) {
-                        newHighlightedBlock = block;
+                for (int i : blockGrid.candidates(x, y)) {
+                    if (blockHitShapes.get(i).contains(x, y)) {
+                        newHighlightedBlock = blocks.get(i);
                         break;
                     }
                 }
@@ -216,14 +295,7 @@ public class MapPanel extends JPanel {
                     highlightBlock(newHighlightedBlock);
                 }
 
-                Intersection newHighlightedIntersection = null;
-                for (Intersection intersection : intersections) {
-                    if (Math.abs(intersection.getCoordinate().getX() - x) <= 5 &&
-                        Math.abs(intersection.getCoordinate().getY() - y) <= 5) {
-                        newHighlightedIntersection = intersection;
-                        break;
-                    }
-                }
+                Intersection newHighlightedIntersection = intersectionAt(x, y);
 
                 if (newHighlightedIntersection != highlightedIntersection) {
                     highlightIntersection(newHighlightedIntersection);
@@ -239,14 +311,7 @@ public class MapPanel extends JPanel {
                     int x = e.getX();
                     int y = e.getY();
 
-                    Intersection newSelectedIntersection = null;
-                    for (Intersection intersection : intersections) {
-                        if (Math.abs(intersection.getCoordinate().getX() - x) <= 5 &&
-                            Math.abs(intersection.getCoordinate().getY() - y) <= 5) {
-                            newSelectedIntersection = intersection;
-                            break;
-                        }
-                    }
+                    Intersection newSelectedIntersection = intersectionAt(x, y);
 
                     if (newSelectedIntersection != null) {
                         selectIntersection(newSelectedIntersection);
@@ -259,89 +324,251 @@ public class MapPanel extends JPanel {
         });
     }
 
+    private void invalidateBackground() {
+        backgroundLayer = null;
+        blockLayer = null;
+        networkLayer = null;
+    }
+
+    /**
+     * Renders any cached layer that is missing. The layers hold everything that only changes
+     * when the map, images, or transparency change, so that a repaint after a hover or a new
+     * path only has to draw the highlighted blocks and the intersections they cover.
+     */
+    private void renderLayers() {
+        if (backgroundLayer == null) {
+            backgroundLayer = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = backgroundLayer.createGraphics();
+            g2d.setColor(backgroundColor);
+            g2d.fillRect(0, 0, WIDTH, HEIGHT);
+            g2d.drawImage(satelliteImage, 0, 0, WIDTH, HEIGHT, this);
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) overlayTransparency));
+            g2d.drawImage(overlayImage, 0, 0, WIDTH, HEIGHT, this);
+            g2d.dispose();
+        }
+        if (blockLayer == null) {
+            blockLayer = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = blockLayer.createGraphics();
+            g2d.drawImage(backgroundLayer, 0, 0, null);
+            g2d.setColor(defaultBlockColor);
+            for (Block block : blocks) {
+                g2d.setStroke(new BasicStroke(block.getRoadSize()));
+                g2d.draw(block.getPath());
+            }
+            g2d.dispose();
+            networkLayer = null;
+        }
+        if (networkLayer == null) {
+            networkLayer = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = networkLayer.createGraphics();
+            g2d.drawImage(blockLayer, 0, 0, null);
+            int n = intersections.size();
+            int[] xs = new int[n], ys = new int[n], ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                Intersection intersection = intersections.get(i);
+                xs[i] = intersection.getCoordinate().getX();
+                ys[i] = intersection.getCoordinate().getY();
+                ids[i] = i;
+                drawIntersection(g2d, intersection, false, false);
+            }
+            g2d.dispose();
+            intersectionTree = new KdTree(xs, ys, ids, n);
+            dotsUnderBlock = new HashMap<>();
+        }
+    }
+
+    /**
+     * Draws a block over the cached network layer. The layer already holds the block in its
+     * default color, as does the original code's output: the block's reverse-direction twin
+     * is always drawn in the default color underneath it.
+     */
+    private void drawBlock(Graphics2D g2d, Block block, Color color) {
+        g2d.setStroke(new BasicStroke(block.getRoadSize()));
+        g2d.setColor(color);
+        g2d.draw(block.getPath());
+    }
+
+    private void drawBlock(Graphics2D g2d, Block block, Set<Block> only, Color color) {
+        if (only == null || only.contains(block)) {
+            drawBlock(g2d, block, color);
+        }
+    }
+
+    /**
+     * Draws an intersection's dot, which covers the INTERSECTION_RADIUS * 2 pixel square
+     * centered on it.
+     */
+    private void drawIntersection(Graphics2D g2d, Intersection intersection, boolean highlighted, boolean selected) {
+        int x = intersection.getCoordinate().getX();
+        int y = intersection.getCoordinate().getY();
+        g2d.setColor(intersectionColor);
+        g2d.fillOval(x - 5, y - 5, 10, 10);
+        if (highlighted) {
+            g2d.setColor(selected ? hoverSelectedIntersectionColor : hoverIntersectionColor);
+        } else if (selected) {
+            g2d.setColor(selectedIntersectionColor);
+            g2d.fillOval(x - 4, y - 4, 8, 8);
+            return;
+        } else {
+            g2d.setColor(intersectionCenterColor);
+        }
+        g2d.fillOval(x - 4, y - 4, 8, 8);
+        g2d.setColor(intersectionDotColor);
+        g2d.fillOval(x - 1, y - 1, 2, 2);
+    }
+
+    private void drawIntersection(Graphics2D g2d, Intersection intersection) {
+        drawIntersection(g2d, intersection, intersection.equals(highlightedIntersection),
+                         selectedStartIntersection == intersection || selectedEndIntersection == intersection);
+    }
+
+    /**
+     * Returns the indices of the intersections whose dots a block may cover when drawn.
+     */
+    private int[] dotsUnder(Block block) {
+        int[] dots = dotsUnderBlock.get(block);
+        if (dots == null) {
+            Rectangle bounds = new BasicStroke(block.getRoadSize()).createStrokedShape(block.getPath()).getBounds();
+            // One pixel of slack on each side for the rasterizer's rounding
+            dots = intersectionTree.inRange(bounds.x - INTERSECTION_RADIUS - 1, bounds.y - INTERSECTION_RADIUS - 1,
+                                            bounds.x + bounds.width + INTERSECTION_RADIUS + 1,
+                                            bounds.y + bounds.height + INTERSECTION_RADIUS + 1);
+            dotsUnderBlock.put(block, dots);
+        }
+        return dots;
+    }
+
+    /**
+     * Finds the intersections whose dots must be drawn over the highlighted blocks: those a
+     * highlighted block may cover, and the highlighted and selected intersections.
+     * @return the highlighted blocks that may cover each dot, by intersection index
+     */
+    private TreeMap<Integer, HashSet<Block>> coveredIntersections() {
+        TreeMap<Integer, HashSet<Block>> covered = new TreeMap<>();
+        if (highlightedIsochrone != null) {
+            for (Block block : highlightedIsochrone.getBoundaryBlocks()) cover(covered, block);
+            for (Block block : highlightedIsochrone.getBlocks()) cover(covered, block);
+        }
+        if (highlightedBlock != null) cover(covered, highlightedBlock);
+        if (highlightedMinimizeIntersectionPathActivated) {
+            for (Block block : highlightedMinimizeIntersectionPath) cover(covered, block);
+        }
+        if (highlightedFastestPathActivated) {
+            for (Block block : highlightedFastestPath) cover(covered, block);
+        }
+        for (Intersection intersection : new Intersection[]{highlightedIntersection, selectedStartIntersection, selectedEndIntersection}) {
+            if (intersection != null) {
+                int x = intersection.getCoordinate().getX(), y = intersection.getCoordinate().getY();
+                for (int i : intersectionTree.inRange(x, y, x, y)) covered.computeIfAbsent(i, k -> new HashSet<>());
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Redraws covered intersections on top of the highlighted blocks. Each dot's square is
+     * redrawn on its own, clipped to it: the block layer is restored, then the highlighted
+     * blocks reaching into the square and every dot reaching into it are drawn again in the
+     * usual order, so each pixel ends up as if every intersection were drawn last. Clips are
+     * kept rectangular, since a shape clip changes how ovals are filled.
+     * @param covered the highlighted blocks that may cover each dot, by intersection index
+     */
+    private void drawCoveredIntersections(Graphics2D g2d, TreeMap<Integer, HashSet<Block>> covered) {
+        // Dots overlap when their centers are less than a dot's width apart along both axes
+        int width = 2 * INTERSECTION_RADIUS;
+        Shape oldClip = g2d.getClip();
+        for (Map.Entry<Integer, HashSet<Block>> entry : covered.entrySet()) {
+            Coordinate c = intersections.get(entry.getKey()).getCoordinate();
+            g2d.setClip(oldClip);
+            g2d.clipRect(c.getX() - INTERSECTION_RADIUS, c.getY() - INTERSECTION_RADIUS, width, width);
+            g2d.drawImage(blockLayer, 0, 0, null);
+            drawHighlightedBlocks(g2d, entry.getValue());
+            g2d.setStroke(intersectionStroke);
+            for (int i : intersectionTree.inRange(c.getX() - width + 1, c.getY() - width + 1, c.getX() + width - 1, c.getY() + width - 1)) {
+                drawIntersection(g2d, intersections.get(i));
+            }
+        }
+        g2d.setClip(oldClip);
+    }
+
+    private void cover(TreeMap<Integer, HashSet<Block>> covered, Block block) {
+        for (int i : dotsUnder(block)) {
+            covered.computeIfAbsent(i, k -> new HashSet<>()).add(block);
+        }
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        g.drawImage(satelliteImage, 0, 0, WIDTH, HEIGHT, this);
-        
+        renderLayers();
+
         Graphics2D g2d = (Graphics2D) g;
-        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) overlayTransparency));
-        g2d.drawImage(overlayImage, 0, 0, WIDTH, HEIGHT, this);
-        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
-        
-        if (networkVisualsActivated) {
-            for (Block block : blocks) {
-                if ((highlightedMinimizeIntersectionPathActivated && highlightedMinimizeIntersectionPath.contains(block)) ||
-                    (highlightedFastestPathActivated && highlightedFastestPath.contains(block))) 
-                    continue;
+        if (!networkVisualsActivated) {
+            g2d.drawImage(backgroundLayer, 0, 0, null);
+            drawHighlightedBlocks(g2d, null);
+            return;
+        }
+        // Intersection points lie on top of the blocks. The network layer holds them in their
+        // default look, so only those under a highlighted block or highlighted themselves are
+        // redrawn, unless there are so many that drawing them all again is cheaper
+        TreeMap<Integer, HashSet<Block>> covered = coveredIntersections();
+        if (covered.size() > intersections.size() / REDRAW_ALL_FRACTION) {
+            g2d.drawImage(blockLayer, 0, 0, null);
+            drawHighlightedBlocks(g2d, null);
+            g2d.setStroke(intersectionStroke);
+            for (Intersection intersection : intersections) {
+                drawIntersection(g2d, intersection);
+            }
+        } else {
+            g2d.drawImage(networkLayer, 0, 0, null);
+            drawHighlightedBlocks(g2d, null);
+            drawCoveredIntersections(g2d, covered);
+        }
+    }
 
-                g2d.setStroke(new BasicStroke(block.getRoadSize()));
-                if (block.equals(highlightedBlock)) {
-                    g2d.setColor(hoverDefaultBlockColor);     
-                } else {
-                    g2d.setColor(defaultBlockColor);
-                }
-                g2d.draw(block.getPath());
+    /**
+     * Draws the isochrone, hovered block, and paths over the cached layers.
+     * @param only the blocks to draw, or null to draw every highlighted block
+     */
+    private void drawHighlightedBlocks(Graphics2D g2d, Set<Block> only) {
+        if (highlightedIsochrone != null) {
+            // Boundary first, so a street reachable in one direction shows as inside the region
+            for (Block block : highlightedIsochrone.getBoundaryBlocks()) {
+                drawBlock(g2d, block, only, isochroneBoundaryColor);
+            }
+            for (Block block : highlightedIsochrone.getBlocks()) {
+                drawBlock(g2d, block, only, isochroneColor);
             }
         }
 
+        if (networkVisualsActivated && highlightedBlock != null &&
+            !(highlightedMinimizeIntersectionPathActivated && highlightedMinimizeIntersectionPath.contains(highlightedBlock)) &&
+            !(highlightedFastestPathActivated && highlightedFastestPath.contains(highlightedBlock))) {
+            drawBlock(g2d, highlightedBlock, only, hoverDefaultBlockColor);
+        }
+
         if (highlightedMinimizeIntersectionPathActivated) {
             for (Block block : highlightedMinimizeIntersectionPath) {
                 if (highlightedFastestPathActivated && highlightedFastestPath.contains(block)) 
                     continue;
-                if (block.equals(highlightedBlock))
-                    g2d.setColor(hoverMinimizeIntersectionPathColor);
-                else 
-                    g2d.setColor(minimizeIntersectionPathColor);
-                g2d.setStroke(new BasicStroke(block.getRoadSize()));
-                g2d.draw(block.getPath());
+                drawBlock(g2d, block, only, block.equals(highlightedBlock) ? hoverMinimizeIntersectionPathColor : minimizeIntersectionPathColor);
             }
         }
 
         if (highlightedFastestPathActivated) {
             for (Block block : highlightedFastestPath) {
+                Color color;
                 if (highlightedMinimizeIntersectionPathActivated && highlightedMinimizeIntersectionPath.contains(block)) { 
-                    if (block.equals(highlightedBlock))
-                        g2d.setColor(hoverCombinedPathColor);
-                    else
-                        g2d.setColor(combinedPathColor);
-                } else if (block.equals(highlightedBlock))
-                    g2d.setColor(hoverFastestPathColor);
-                else 
-                    g2d.setColor(fastestPathColor);
-                g2d.setStroke(new BasicStroke(block.getRoadSize()));
-                g2d.draw(block.getPath());
-            }
-        }
-        if (networkVisualsActivated && highlightedBlock != null) {
-            g2d.setStroke(new BasicStroke(highlightedBlock.getRoadSize()));
-            g2d.setColor(hoverDefaultBlockColor);
-            g2d.draw(highlightedBlock.getPath());
-        }
-        // Separate from first networkVisualsActivated if clause so that intersection points lie on top of the blocks
-        if (networkVisualsActivated) {
-            for (Intersection intersection : intersections) {
-                g2d.setColor(new Color(255, 255, 255, 210));
-                g2d.fillOval(intersection.getCoordinate().getX() - 5, intersection.getCoordinate().getY() - 5, 10, 10);
-                if (intersection.equals(highlightedIntersection)) {
-                    if (selectedStartIntersection == intersection || selectedEndIntersection == intersection)
-                        g2d.setColor(new Color(15, 83, 255, 150));            
-                    else 
-                        g2d.setColor(new Color(0,0,0, 100));
-                } else if (selectedStartIntersection == intersection || selectedEndIntersection == intersection) {
-                    g2d.setColor(new Color(15, 83, 255));
-                    g2d.fillOval(intersection.getCoordinate().getX() - 4, intersection.getCoordinate().getY() - 4, 8, 8);
-                    continue;
+                    color = block.equals(highlightedBlock) ? hoverCombinedPathColor : combinedPathColor;
                 } else {
-                    g2d.setColor(Color.BLACK);
+                    color = block.equals(highlightedBlock) ? hoverFastestPathColor : fastestPathColor;
                 }
-                g2d.fillOval(intersection.getCoordinate().getX() - 4, intersection.getCoordinate().getY() - 4, 8, 8);
-                g2d.setColor(Color.WHITE);
-                g2d.fillOval(intersection.getCoordinate().getX() - 1, intersection.getCoordinate().getY() - 1, 2, 2);
+                drawBlock(g2d, block, only, color);
             }
         }
-
-
+        if (networkVisualsActivated && highlightedBlock != null) {
+            drawBlock(g2d, highlightedBlock, only, hoverDefaultBlockColor);
+        }
     }
 
     @Override
@@ -0,0 +1,253 @@
+package rumaps;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The MapSnapshot class saves a built Network to a binary file and loads it back, so a
+ * map can be opened without parsing its .in file or computing any block lengths.
+ *
+ * The snapshot holds the network exactly as it was saved, including the traffic factors
+ * and traffic of every block; loading it does not draw new random traffic factors.
+ * Blocks are replayed into each adjacency list in their saved order, so every search
+ * gives the same results on the loaded network as on the saved one.
+ *
+ * The file is big-endian and is read through a memory mapping, but the network is not
+ * used from the mapping in place: load reads the file once and rebuilds every Intersection,
+ * Block, and Coordinate object, as MapLoader does, only without parsing text or computing
+ * block lengths. Its layout is:
+ * - header - magic number, format version, intersection array size, number of intersections,
+ *   number of street names, number of polylines, number of polyline points, number of blocks
+ * - intersections - x and y of each
+ * - street names - byte length and UTF-8 bytes of each
+ * - polylines - start offsets of each polyline's points (plus one past the end), then x and y
+ *   of each point; a block and its reversed copy share a polyline
+ * - blocks - for each, in replay order: first and last endpoint indices, polyline, street name
+ *   (-1 for none), block number, road size, length, traffic factor, and traffic
+ */
+public class MapSnapshot {
+    private static final int MAGIC = 0x52554D53; // "RUMS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8 * Integer.BYTES;
+    private static final int BLOCK_BYTES = 5 * Integer.BYTES + Float.BYTES + 3 * Double.BYTES;
+
+    private MapSnapshot() {
+    }
+
+    /**
+     * Saves a network to a snapshot file.
+     *
+     * @param network the network to save
+     * @param filename the name of the snapshot file to write
+     */
+    public static void save(Network network, String filename) {
+        Intersection[] intersections = network.getIntersections();
+        Block[] adj = network.getAdjacencyList();
+        int count = network.getNextIndex();
+
+        ArrayList<Block> order = replayOrder(network);
+        HashMap<String, Integer> streetIndex = new HashMap<>();
+        ArrayList<String> streets = new ArrayList<>();
+        HashMap<ArrayList<Coordinate>, Integer> polylineIndex = new HashMap<>();
+        ArrayList<ArrayList<Coordinate>> polylines = new ArrayList<>();
+        int pointCount = 0;
+        for (Block block : order) {
+            if (block.getStreetName() != null && !streetIndex.containsKey(block.getStreetName())) {
+                streetIndex.put(block.getStreetName(), streets.size());
+                streets.add(block.getStreetName());
+            }
+            if (!polylineIndex.containsKey(block.getCoordinatePoints())) {
+                polylineIndex.put(block.getCoordinatePoints(), polylines.size());
+                polylines.add(block.getCoordinatePoints());
+                pointCount += block.getCoordinatePoints().size();
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(adj.length);
+            out.writeInt(count);
+            out.writeInt(streets.size());
+            out.writeInt(polylines.size());
+            out.writeInt(pointCount);
+            out.writeInt(order.size());
+
+            for (int i = 0; i < count; i++) {
+                out.writeInt(intersections[i].getCoordinate().getX());
+                out.writeInt(intersections[i].getCoordinate().getY());
+            }
+            for (String street : streets) {
+                byte[] bytes = street.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            int offset = 0;
+            for (ArrayList<Coordinate> polyline : polylines) {
+                out.writeInt(offset);
+                offset += polyline.size();
+            }
+            out.writeInt(offset);
+            for (ArrayList<Coordinate> polyline : polylines) {
+                for (Coordinate c : polyline) {
+                    out.writeInt(c.getX());
+                    out.writeInt(c.getY());
+                }
+            }
+
+            for (Block block : order) {
+                out.writeInt(network.findIntersection(block.getFirstEndpoint().getCoordinate()));
+                out.writeInt(network.findIntersection(block.getLastEndpoint().getCoordinate()));
+                out.writeInt(polylineIndex.get(block.getCoordinatePoints()));
+                out.writeInt(block.getStreetName() == null ? -1 : streetIndex.get(block.getStreetName()));
+                out.writeInt(block.getBlockNumber());
+                out.writeFloat(block.getRoadSize());
+                out.writeDouble(block.getLength());
+                out.writeDouble(block.getTrafficFactor());
+                out.writeDouble(block.getTraffic());
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not write " + filename, ioe);
+        }
+    }
+
+    /**
+     * Loads a network from a snapshot file.
+     *
+     * @param mapPanel The map panel to display the map, or null
+     * @param filename the name of the snapshot file to read
+     * @return a RUMaps object for the saved network
+     * @throws IllegalStateException if the file is not a map snapshot, or is truncated or corrupt
+     */
+    public static RUMaps load(MapPanel mapPanel, String filename) {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Could not open " + filename, ioe);
+        }
+        if (in.limit() < HEADER_BYTES || in.getInt() != MAGIC) {
+            throw new IllegalStateException(filename + " is not a map snapshot");
+        }
+        if (in.getInt() != VERSION) {
+            throw new IllegalStateException(filename + " has an unsupported snapshot version");
+        }
+        int capacity = in.getInt();
+        int count = in.getInt();
+        int streetCount = in.getInt();
+        int polylineCount = in.getInt();
+        int pointCount = in.getInt();
+        int blockCount = in.getInt();
+        // Check the counts against the file's size before allocating anything for them. Nothing
+        // else in the file depends on the array size, so it is only kept from being larger than
+        // the file, which is enough to stop a corrupt header from asking for huge arrays
+        long minimumBytes = HEADER_BYTES + 2L * count * Integer.BYTES + (long) streetCount * Integer.BYTES
+                + (polylineCount + 1L) * Integer.BYTES + 2L * pointCount * Integer.BYTES + (long) blockCount * BLOCK_BYTES;
+        if (count < 0 || streetCount < 0 || polylineCount < 0 || pointCount < 0 || blockCount < 0
+                || capacity < count || capacity > Math.max(count, in.limit()) || minimumBytes > in.limit()) {
+            throw corrupt(filename);
+        }
+
+        Network network = new Network(capacity, mapPanel);
+        RUMaps rumaps = new RUMaps(network);
+        for (int i = 0; i < count; i++) {
+            network.addIntersection(new Intersection(new Coordinate(in.getInt(), in.getInt())));
+        }
+
+        String[] streets = new String[streetCount];
+        for (int i = 0; i < streetCount; i++) {
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                throw corrupt(filename);
+            }
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            streets[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        if (in.remaining() != (polylineCount + 1L) * Integer.BYTES + 2L * pointCount * Integer.BYTES
+                + (long) blockCount * BLOCK_BYTES) {
+            throw corrupt(filename);
+        }
+        int[] polylineOffsets = new int[polylineCount + 1];
+        for (int i = 0; i <= polylineCount; i++) {
+            polylineOffsets[i] = in.getInt();
+            // Each polyline has at least one point
+            if (polylineOffsets[i] < (i == 0 ? 0 : polylineOffsets[i - 1] + 1)
+                    || polylineOffsets[i] > (i == polylineCount ? pointCount : pointCount - 1)) {
+                throw corrupt(filename);
+            }
+        }
+        Coordinate[] points = new Coordinate[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            points[i] = new Coordinate(in.getInt(), in.getInt());
+        }
+
+        Intersection[] intersections = network.getIntersections();
+        for (int b = 0; b < blockCount; b++) {
+            int first = in.getInt();
+            int last = in.getInt();
+            int polyline = in.getInt();
+            int street = in.getInt();
+            int blockNumber = in.getInt();
+            if (first < 0 || first >= count || last < 0 || last >= count || polyline < 0 || polyline >= polylineCount
+                    || street < -1 || street >= streetCount) {
+                throw corrupt(filename);
+            }
+            Block block = new Block(in.getFloat(), street == -1 ? null : streets[street], blockNumber);
+            block.startPoint(points[polylineOffsets[polyline]]);
+            for (int p = polylineOffsets[polyline] + 1; p < polylineOffsets[polyline + 1]; p++) {
+                block.nextPoint(points[p]);
+            }
+            block.setLength(in.getDouble());
+            block.setTrafficFactor(in.getDouble());
+            block.setTraffic(in.getDouble());
+            block.setFirstEndpoint(intersections[first]);
+            block.setLastEndpoint(intersections[last]);
+            network.addEdge(first, block);
+        }
+        return rumaps;
+    }
+
+    private static IllegalStateException corrupt(String filename) {
+        return new IllegalStateException(filename + " is truncated or corrupt");
+    }
+
+    /**
+     * Orders the blocks of a network so that adding them in that order rebuilds every
+     * adjacency list as it is. Each block is followed by its reversed copy when that copy
+     * is next in its own list, so a map's blocks come out in pairs, as they are loaded.
+     */
+    private static ArrayList<Block> replayOrder(Network network) {
+        Block[] adj = network.getAdjacencyList();
+        Block[] heads = adj.clone();  // heads[v] is the first block of adj[v] not yet ordered
+        ArrayList<Block> order = new ArrayList<>();
+        for (int v = 0; v < adj.length; v++) {
+            while (heads[v] != null) {
+                Block block = heads[v];
+                order.add(block);
+                heads[v] = block.getNext();
+
+                int w = network.findIntersection(block.getLastEndpoint().getCoordinate());
+                Block twin = w == -1 ? null : heads[w];
+                if (twin != null && twin.getLastEndpoint().equals(block.getFirstEndpoint())
+                        && twin.getCoordinatePoints().equals(block.getCoordinatePoints())) {
+                    order.add(twin);
+                    heads[w] = twin.getNext();
+                }
+            }
+        }
+        return order;
+    }
+}
@@ -1,22 +1,52 @@
 package rumaps;
 
+import java.util.Arrays;
+
 public class Network {
     // Stores vertices
     private Intersection[] intersections;
     // Stores edges: adj[i] refers to the edges of vertex in intersections[i]
     private Block[] adj; 
+    // tails[i] is the last block known in adj[i], so addEdge need not walk the list
+    private Block[] tails;
     private int nextIndex;
 
+    // CSR form of the network, built on first use and discarded when edges change
+    private CompactGraph compactGraph;
+    // Incremented whenever block traffic values change
+    private int trafficVersion;
+    // Traffic factors of every block by time of day, indexed by CSR edge id; null until set
+    private TrafficProfiles trafficProfiles;
+
+    // Open-addressing index from packed (x, y) coordinates to intersection indices
+    private long[] indexKeys;
+    private int[] indexValues;
+    private int indexMask;
+
+    // Union-find forest over intersection indices, joined by addEdge; two intersections
+    // are in the same tree exactly when some chain of blocks connects them
+    private int[] componentParent;
+    private int[] componentSize;
+    private boolean componentsValid;
+    // Root of each intersection's tree, flattened from the forest on first query and
+    // discarded whenever two trees merge
+    private int[] componentId;
+
+    // 2-d tree over intersection coordinates, built on first use and discarded when intersections change
+    private KdTree kdTree;
+
     private MapPanel mapPanel;
 
     public Network(int size) {
         intersections = new Intersection[size];
         adj = new Block[size];
+        tails = new Block[size];
+        rebuildIndex();
+        resetComponents();
     }
 
     public Network(int size, MapPanel mapPanel) {
-        intersections = new Intersection[size];
-        adj = new Block[size];
+        this(size);
         this.mapPanel = mapPanel;
     }
 
@@ -36,14 +66,52 @@ public class Network {
      * @return the intersection index or -1 if nonexistent
      */
     public int findIntersection(int x, int y) {
-        for (int i = 0; i < intersections.length; i++) {
-            if (intersections[i] != null && intersections[i].getCoordinate().getX() == x && intersections[i].getCoordinate().getY() == y) {
-                return i;
+        long key = packCoordinate(x, y);
+        int slot = slotFor(key);
+        while (indexValues[slot] != -1) {
+            if (indexKeys[slot] == key) {
+                return indexValues[slot];
             }
+            slot = (slot + 1) & indexMask;
         }
         return -1; // Not found
     }
 
+    /**
+     * Finds the intersection nearest to a point, which need not be an intersection itself.
+     * Takes O(log n) expected time once the 2-d tree is built.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @return the index of the nearest intersection (the lowest of those at the same distance),
+     *         or -1 if there are no intersections
+     */
+    public int nearestIntersection(int x, int y) {
+        return getKdTree().nearest(x, y);
+    }
+
+    /**
+     * Finds the k intersections nearest to a point.
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @param k the number of intersections wanted
+     * @return their indices, nearest first; fewer than k if there are fewer intersections
+     */
+    public int[] nearestIntersections(int x, int y, int k) {
+        return getKdTree().nearest(x, y, k);
+    }
+
+    /**
+     * Finds the intersections inside a rectangle, borders included.
+     * @param minX the left edge
+     * @param minY the top edge
+     * @param maxX the right edge
+     * @param maxY the bottom edge
+     * @return their indices, in increasing order
+     */
+    public int[] intersectionsInRange(int minX, int minY, int maxX, int maxY) {
+        return getKdTree().inRange(minX, minY, maxX, maxY);
+    }
+
     /**
      * Adds an intersection to the next open space in the intersections
      * array. Assumes the intersections array is correctly sized.
@@ -51,7 +119,9 @@ public class Network {
      */
     public void addIntersection(Intersection res) {
         intersections[nextIndex] = res;
+        indexIntersection(res, nextIndex);
         nextIndex++;
+        kdTree = null;
         if (mapPanel != null) mapPanel.addIntersection(res);
     }
 
@@ -64,19 +134,130 @@ public class Network {
     public void addEdge(int index,Block toAdd) {
         if (adj[index] == null) {
             adj[index] = toAdd;
-            if (mapPanel != null){
-                mapPanel.addBlock(toAdd);
-            }
         } else {
-            Block current = adj[index];
+            Block current = tails[index] != null ? tails[index] : adj[index];
             while (current.getNext() != null) {
                 current = current.getNext();
             }
             current.setNext(toAdd);
-            if (mapPanel != null){
-                mapPanel.addBlock(toAdd);
+        }
+        tails[index] = toAdd;
+        compactGraph = null;
+        trafficProfiles = null;
+        if (componentsValid) {
+            int target = findIntersection(toAdd.getLastEndpoint().getCoordinate());
+            if (target != -1) union(index, target);
+        }
+        if (mapPanel != null){
+            mapPanel.addBlock(toAdd);
+        }
+    }
+
+    /**
+     * Records that the traffic values of some blocks have changed, so that the
+     * CSR form is rebuilt and results computed with the old values are discarded.
+     */
+    public void trafficChanged() {
+        trafficVersion++;
+        compactGraph = null;
+    }
+
+    /**
+     * Returns whether two intersections are joined by some chain of blocks, ignoring
+     * their direction. If not, there is no path between them; as every block is added
+     * in both directions, the converse also holds.
+     * Takes O(1) time, comparing two precomputed component ids. Once the ids are built,
+     * this only reads the network, so it may be called from several threads at once.
+     * @param a the index of the first intersection
+     * @param b the index of the second intersection
+     * @return true if a and b are in the same connected component
+     */
+    public boolean isConnected(int a, int b) {
+        if (!componentsValid) {
+            resetComponents();
+            for (int v = 0; v < adj.length; v++) {
+                for (Block ptr = adj[v]; ptr != null; ptr = ptr.getNext()) {
+                    int target = findIntersection(ptr.getLastEndpoint().getCoordinate());
+                    if (target != -1) union(v, target);
+                }
+            }
+        }
+        if (componentId == null) {
+            int[] ids = new int[componentParent.length];
+            for (int v = 0; v < ids.length; v++) {
+                ids[v] = findComponent(v);
             }
+            componentId = ids;
         }
+        return componentId[a] == componentId[b];
+    }
+
+    /**
+     * Changes the traffic factor of one block (one direction of a street block) and
+     * updates its traffic. The CSR form, if built, is updated in place rather than
+     * discarded, so results computed on it can be repaired instead of recomputed.
+     * 
+     * @param block a block in this network
+     * @param trafficFactor the new traffic factor
+     * @return the CSR edge id of the block, or -1 if the CSR form is not built
+     */
+    public int updateTrafficFactor(Block block, double trafficFactor) {
+        if (!(trafficFactor >= 0)) throw new IllegalArgumentException("traffic factor must be non-negative");
+        int source = findIntersection(block.getFirstEndpoint().getCoordinate());
+        if (source == -1) throw new IllegalArgumentException("block is not in the network");
+        int e = compactGraph == null ? -1 : compactGraph.findEdge(source, block);
+        if (compactGraph != null && e == -1) throw new IllegalArgumentException("block is not in the network");
+
+        block.setTrafficFactor(trafficFactor);
+        block.setTraffic(trafficFactor * block.getLength());
+        trafficVersion++;
+        if (e != -1) {
+            compactGraph.setTrafficFactor(e, trafficFactor);
+        }
+        return e;
+    }
+
+    /**
+     * Returns a counter that changes every time the traffic changes.
+     * @return the current traffic version
+     */
+    public int getTrafficVersion() {
+        return trafficVersion;
+    }
+
+    /**
+     * Returns the compressed sparse row form of this network, building it
+     * on first use after the network was last modified.
+     * 
+     * Call this once the blocks' lengths and traffic factors are set; the
+     * graph is a snapshot of the values at the time it is built.
+     * @return the CSR graph of this network
+     */
+    public CompactGraph getCompactGraph() {
+        if (compactGraph == null) {
+            compactGraph = new CompactGraph(this);
+        }
+        return compactGraph;
+    }
+
+    /**
+     * Returns the time-of-day traffic factors of this network's blocks.
+     * @return the profiles, or null if none have been set since the blocks last changed
+     */
+    public TrafficProfiles getTrafficProfiles() {
+        return trafficProfiles;
+    }
+
+    /**
+     * Sets the time-of-day traffic factors of this network's blocks. They are discarded
+     * if blocks are added afterwards, since that changes the CSR edge ids.
+     * @param trafficProfiles profiles with one entry per CSR edge
+     */
+    public void setTrafficProfiles(TrafficProfiles trafficProfiles) {
+        if (trafficProfiles != null && trafficProfiles.getEdgeCount() != getCompactGraph().edgeCount()) {
+            throw new IllegalArgumentException("profiles are for a network with a different number of blocks");
+        }
+        this.trafficProfiles = trafficProfiles;
     }
 
     /**
@@ -94,6 +275,10 @@ public class Network {
 
     public void setIntersections(Intersection[] arr) {
         this.intersections = arr;
+        compactGraph = null;
+        kdTree = null;
+        componentsValid = false;
+        rebuildIndex();
     }
 
     public Block[] getAdjacencyList() {
@@ -102,6 +287,10 @@ public class Network {
 
     public void setAdj(Block[] arr) {
         this.adj = arr;
+        this.tails = new Block[arr.length];
+        compactGraph = null;
+        trafficProfiles = null;
+        componentsValid = false;
     }
 
     public int getNextIndex() {
@@ -110,5 +299,118 @@ public class Network {
 
     public void setNextIndex(int nextIndex) {
         this.nextIndex = nextIndex;
+        kdTree = null;
+    }
+
+    /**
+     * Returns the 2-d tree over the first nextIndex intersections, building it if needed.
+     */
+    private KdTree getKdTree() {
+        if (kdTree == null) {
+            int[] xs = new int[nextIndex];
+            int[] ys = new int[nextIndex];
+            int[] ids = new int[nextIndex];
+            int count = 0;
+            for (int i = 0; i < nextIndex; i++) {
+                if (intersections[i] != null) {
+                    xs[count] = intersections[i].getCoordinate().getX();
+                    ys[count] = intersections[i].getCoordinate().getY();
+                    ids[count++] = i;
+                }
+            }
+            kdTree = new KdTree(xs, ys, ids, count);
+        }
+        return kdTree;
+    }
+
+    /**
+     * Rebuilds the coordinate index from the intersections array. The table
+     * is kept at most half full so probe sequences stay short.
+     */
+    private void rebuildIndex() {
+        int capacity = 2;
+        while (capacity < 2 * intersections.length) {
+            capacity <<= 1;
+        }
+        indexKeys = new long[capacity];
+        indexValues = new int[capacity];
+        Arrays.fill(indexValues, -1);
+        indexMask = capacity - 1;
+        for (int i = 0; i < intersections.length; i++) {
+            if (intersections[i] != null) {
+                indexIntersection(intersections[i], i);
+            }
+        }
+    }
+
+    /**
+     * Records the index of an intersection under its coordinate. If the
+     * coordinate is already indexed, the earlier (lower) index is kept, matching
+     * the first-match behavior of a linear scan.
+     * @param intersection the intersection to index
+     * @param index its position in the intersections array
+     */
+    private void indexIntersection(Intersection intersection, int index) {
+        Coordinate c = intersection.getCoordinate();
+        long key = packCoordinate(c.getX(), c.getY());
+        int slot = slotFor(key);
+        while (indexValues[slot] != -1) {
+            if (indexKeys[slot] == key) {
+                if (index < indexValues[slot]) indexValues[slot] = index;
+                return;
+            }
+            slot = (slot + 1) & indexMask;
+        }
+        indexKeys[slot] = key;
+        indexValues[slot] = index;
+    }
+
+    /**
+     * Puts every intersection in a component of its own.
+     */
+    private void resetComponents() {
+        int n = Math.max(intersections.length, adj.length);
+        componentParent = new int[n];
+        componentSize = new int[n];
+        for (int v = 0; v < n; v++) {
+            componentParent[v] = v;
+            componentSize[v] = 1;
+        }
+        componentsValid = true;
+        componentId = null;
+    }
+
+    private int findComponent(int v) {
+        while (componentParent[v] != v) {
+            componentParent[v] = componentParent[componentParent[v]]; // path halving
+            v = componentParent[v];
+        }
+        return v;
+    }
+
+    /**
+     * Merges the components of two intersections, hanging the smaller tree under the larger.
+     */
+    private void union(int a, int b) {
+        int rootA = findComponent(a);
+        int rootB = findComponent(b);
+        if (rootA == rootB) return;
+        if (componentSize[rootA] < componentSize[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        componentParent[rootB] = rootA;
+        componentSize[rootA] += componentSize[rootB];
+        componentId = null;
+    }
+
+    private static long packCoordinate(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private int slotFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & indexMask;
     }
 }
@@ -1,5 +1,6 @@
 package rumaps;
 
+import java.io.File;
 import java.util.*;
 
 /**
@@ -19,6 +20,34 @@ public class RUMaps {
     
     private Network rutgers;
 
+    // Number of intersections settled by the most recent fastestPath or astarPath call
+    private int settledCount;
+
+    // Contraction hierarchy for hierarchyPath, built by prepareContractionHierarchy
+    private ContractionHierarchy hierarchy;
+    private int hierarchyVersion;
+
+    // Landmark distance tables for landmarkPath, and the traffic version they were computed at
+    private Landmarks landmarks;
+    private int landmarksVersion;
+
+    // Shortest path tree from the most recent shortestPathTree source,
+    // and the network traffic version it is up to date with
+    private ShortestPathTree retainedTree;
+    private int retainedTreeVersion;
+
+    // Snapshot used by batchRoutes, and the traffic version it was taken at; kept so that
+    // its worker threads' search arrays are reused from one batch to the next
+    private BatchRouter batchRouter;
+    private int batchRouterVersion;
+
+    // Recently answered route queries, for cachedRoute
+    private RouteCache routeCache = new RouteCache(256);
+
+    // Measurements of the path searches, null unless enableMetrics has been called; volatile
+    // so searches on other threads see it enabled and disabled
+    private volatile SearchMetrics metrics;
+
     /**
      * **DO NOT MODIFY THIS METHOD**
      * 
@@ -68,6 +97,15 @@ public class RUMaps {
         
     }
 
+    /**
+     * Creates a map over a network that has already been built, such as by MapLoader.
+     * 
+     * @param network The network of streets and intersections
+     */
+    public RUMaps(Network network) {
+        rutgers = network;
+    }
+
     /**
      * Initializes all blocks, given a number of streets.
      * the file was opened by the constructor - use StdIn to continue reading the file
@@ -175,39 +213,74 @@ public class RUMaps {
      * Use a DFS to traverse through blocks, and find the order of intersections
      * traversed starting from a given intersection (as source).
      * 
-     * Implement this method recursively, using a helper method.
+     * The traversal keeps an explicit stack of (intersection, next block) pairs instead of
+     * recursing, so long chains of blocks cannot overflow the call stack, and visits
+     * intersections in the same order as a recursive DFS would.
      */
     public ArrayList<Intersection> reachableIntersections(Intersection source) {
         // WRITE YOUR CODE HERE
         ArrayList<Intersection> visited = new ArrayList<>();
-        DFS(source, visited);
+        CompactGraph graph = rutgers.getCompactGraph();
+        int index = rutgers.findIntersection(source.getCoordinate());
+        if (index != -1) {
+            DFS(graph, index, visited);
+        }
         return visited;        
     }
 
-    private void DFS(Intersection source, ArrayList<Intersection> visited) {
-        int index = rutgers.findIntersection(source.getCoordinate());
-        if (index == -1 || visited.contains(source)) {
-            return;
-        }
+    private void DFS(CompactGraph graph, int source, ArrayList<Intersection> visited) {
+        int n = graph.vertexCount();
+        Intersection[] vertices = graph.getVertices();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        boolean[] marked = new boolean[n];
+        // stack[k] is an intersection on the current DFS path and cursor[k] the next edge to try from it
+        int[] stack = new int[n];
+        int[] cursor = new int[n];
+        int top = 0;
 
-        visited.add(source);
-        Block block = rutgers.getAdjacencyList()[index];
-        while (block != null) {
-            Intersection next = block.getLastEndpoint();
-            if (!visited.contains(next)) {
-                DFS(next, visited);
+        marked[source] = true;
+        visited.add(vertices[source]);
+        stack[0] = source;
+        cursor[0] = offsets[source];
+        while (top >= 0) {
+            int v = stack[top];
+            if (cursor[top] == offsets[v + 1]) {
+                top--;
+                continue;
+            }
+            int w = targets[cursor[top]++];
+            if (!marked[w]) {
+                marked[w] = true;
+                visited.add(vertices[w]);
+                top++;
+                stack[top] = w;
+                cursor[top] = offsets[w];
             }
-            block = block.getNext();
         }
-        
     }
      
 
+    /**
+     * Returns whether two intersections are connected by some chain of blocks. If not,
+     * every path method returns an empty ArrayList for them without searching.
+     * 
+     * @param a The first intersection
+     * @param b The second intersection
+     * @return true if a path exists between a and b, false otherwise
+     */
+    public boolean isConnected(Intersection a, Intersection b) {
+        int source = rutgers.findIntersection(a.getCoordinate());
+        int target = rutgers.findIntersection(b.getCoordinate());
+        return source != -1 && target != -1 && rutgers.isConnected(source, target);
+    }
+
     /**
      * Finds and returns the path with the least number of intersections (nodes) from the start to the end intersection.
      * 
      * - If no path exists, return an empty ArrayList.
      * - This graph is large. Find a way to eliminate searching through intersections that have already been visited.
+     * - Start and end intersections in different connected components are rejected without searching.
      * 
      * @param start The starting intersection
      * @param end The destination intersection
@@ -215,40 +288,57 @@ public class RUMaps {
      */
     public ArrayList<Intersection> minimizeIntersections(Intersection start, Intersection end) {
         // WRITE YOUR CODE HERE
-        ArrayList<Intersection> path = new ArrayList<>();
-        Intersection[] edgeTo = new Intersection[rutgers.getIntersections().length];
-        boolean[] visited = new boolean[rutgers.getIntersections().length];
-        Queue<Intersection> queue = new Queue<>();
-        queue.enqueue(start);
-        visited[rutgers.findIntersection(start.getCoordinate())] = true;
-        while (!queue.isEmpty()) {
-            Intersection current = queue.dequeue();
-            if (current.equals(end)) {
+        return minimizeIntersectionsEdgePath(start, end).getIntersections();
+    }
+
+    /**
+     * Finds the same path as minimizeIntersections, as the blocks it takes.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @return The path with the least number of turns, empty if no path exists
+     */
+    public EdgePath minimizeIntersectionsEdgePath(Intersection start, Intersection end) {
+        CompactGraph graph = rutgers.getCompactGraph();
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (source == -1 || target == -1 || !rutgers.isConnected(source, target)) {
+            return EdgePath.empty(graph);
+        }
+
+        int n = graph.vertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        int[] predEdge = new int[n];
+        boolean[] visited = new boolean[n];
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        long startTime = System.nanoTime();
+        int relaxed = 0;
+
+        Arrays.fill(predEdge, -1);
+        queue[tail++] = source;
+        visited[source] = true;
+        while (head < tail) {
+            int current = queue[head++];
+            if (current == target) {
                 break;
             }
-            int index = rutgers.findIntersection(current.getCoordinate());
-            Block block = rutgers.getAdjacencyList()[index];
-            while (block != null) {
-                Intersection next = block.getLastEndpoint();
-                if (!visited[rutgers.findIntersection(next.getCoordinate())]) {
-                    visited[rutgers.findIntersection(next.getCoordinate())] = true;
-                    edgeTo[rutgers.findIntersection(next.getCoordinate())] = current;
-                    queue.enqueue(next);
+            relaxed += offsets[current + 1] - offsets[current];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int next = targets[e];
+                if (!visited[next]) {
+                    visited[next] = true;
+                    predEdge[next] = e;
+                    queue[tail++] = next;
                 }
-                block = block.getNext();
             }
         }
-        if (!visited[rutgers.findIntersection(end.getCoordinate())]) {
-            return new ArrayList<>();
-        }
-        Intersection current = end;
-        while (current != null) {
-            path.add(current);
-            current = edgeTo[rutgers.findIntersection(current.getCoordinate())];
+        recordSearch("minimizeIntersections", head, relaxed, 0, startTime);
+        if (!visited[target]) {
+            return EdgePath.empty(graph);
         }
-
-        Collections.reverse(path);
-        return path;
+        return EdgePath.trace(graph, predEdge, target);
     }
 
     /**
@@ -258,6 +348,7 @@ public class RUMaps {
      * What is this variant of Dijkstra?
      * - We are using traffic as a cost - we extract the lowest cost intersection from the fringe.
      * - Once we add the target to the done set, we're done. 
+     * - Start and end intersections in different connected components are rejected without searching.
      * 
      * @param start The starting intersection
      * @param end The destination intersection
@@ -265,55 +356,839 @@ public class RUMaps {
      */
     public ArrayList<Intersection> fastestPath(Intersection start, Intersection end) {
         // WRITE YOUR CODE HERE
-        ArrayList<Intersection> path = new ArrayList<>();
-        Intersection[] pred = new Intersection[rutgers.getIntersections().length];
-        double[] d = new double[rutgers.getIntersections().length];
-        PriorityQueue<Intersection> fringe = new PriorityQueue<>(Comparator.comparingDouble(i -> d[rutgers.findIntersection(i.getCoordinate())]));
+        return fastestEdgePath(start, end).getIntersections();
+    }
 
-        for (int i = 0; i < d.length; i++) {
-            d[i] = Double.POSITIVE_INFINITY;
-            pred[i] = null;
+    /**
+     * Finds the same path as fastestPath, as the blocks it takes.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @return The path with the least traffic, empty if no path exists
+     */
+    public EdgePath fastestEdgePath(Intersection start, Intersection end) {
+        CompactGraph graph = rutgers.getCompactGraph();
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (source == -1 || target == -1 || !rutgers.isConnected(source, target)) {
+            return EdgePath.empty(graph);
         }
-        d[rutgers.findIntersection(start.getCoordinate())] = 0;
-        fringe.add(start);
+
+        int n = graph.vertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        int[] predEdge = new int[n];
+        double[] d = new double[n];
+        Arrays.fill(predEdge, -1);
+        Arrays.fill(d, Double.POSITIVE_INFINITY);
+        IndexMinPQ fringe = new IndexMinPQ(n);
+        long startTime = System.nanoTime();
+        int relaxed = 0;
+
+        d[source] = 0;
+        fringe.insert(source, 0);
     
+        int settled = 0;
         while (!fringe.isEmpty()) {
-            Intersection current = fringe.poll();
-            int i = rutgers.findIntersection(current.getCoordinate());
-    
-            if (current.equals(end)) {
+            int i = fringe.delMin();
+            settled++;
+            if (i == target) {
                 break;
             }
     
-            Block block = rutgers.getAdjacencyList()[i];
-            while (block != null) {
-                Intersection neighbor = block.getLastEndpoint();
-                int neighborIndex = rutgers.findIntersection(neighbor.getCoordinate());
-    
-                double newDist = d[i] + blockTraffic(block);
+            relaxed += offsets[i + 1] - offsets[i];
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int neighborIndex = targets[e];
+                double newDist = d[i] + traffic[e];
                 if (newDist < d[neighborIndex]) {
                     d[neighborIndex] = newDist;
-                    pred[neighborIndex] = current;
-    
-                    fringe.remove(neighbor); 
-                    fringe.add(neighbor);
+                    predEdge[neighborIndex] = e;
+                    fringe.insertOrDecrease(neighborIndex, newDist);
                 }
-                block = block.getNext();
             }
         }
+        recordSearch("fastestPath", settled, relaxed, fringe.getOperationCount(), startTime);
+        settledCount = settled;
     
-        if (d[rutgers.findIntersection(end.getCoordinate())] == Double.POSITIVE_INFINITY) {
+        if (d[target] == Double.POSITIVE_INFINITY) {
+            return EdgePath.empty(graph);
+        }
+        return EdgePath.trace(graph, predEdge, target);
+    }
+
+    /**
+     * Gives every block a traffic factor for each time slice of the day, starting from its
+     * current traffic factor at all times. Change them through the returned profiles, for
+     * example with setTrafficFactor(getRutgers().getCompactGraph().findEdge(source, block), slice, factor),
+     * or draw random ones with randomize().
+     * 
+     * @param slices The number of time slices in a day, such as 96 for quarter-hours
+     * @param sliceLength The length of each time slice, in the same units as traffic
+     * @return the new profiles, which fastestPathAt uses from now on
+     */
+    public TrafficProfiles prepareTrafficProfiles(int slices, double sliceLength) {
+        TrafficProfiles profiles = new TrafficProfiles(rutgers.getCompactGraph(), slices, sliceLength);
+        rutgers.setTrafficProfiles(profiles);
+        return profiles;
+    }
+
+    /**
+     * Finds the path that arrives earliest at the end intersection when leaving the start
+     * intersection at the given time, with each block's traffic factor taken from the network's
+     * traffic profiles at the time the block is traversed.
+     * 
+     * This is Dijkstra's algorithm over arrival times instead of total traffic: the fringe is
+     * ordered by the earliest known arrival at each intersection, and following a block from u
+     * means arriving at its end at the time the profiles give for entering it at u's arrival time.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @param departure The time of leaving the start intersection
+     * @return The earliest-arriving path, or an empty ArrayList if no path exists
+     * @throws IllegalArgumentException if the departure is NaN or infinite
+     * @throws IllegalStateException if the network has no traffic profiles (see prepareTrafficProfiles)
+     */
+    public ArrayList<Intersection> fastestPathAt(Intersection start, Intersection end, double departure) {
+        return fastestEdgePathAt(start, end, departure).getIntersections();
+    }
+
+    /**
+     * Finds the same path as fastestPathAt, as the blocks it takes. Its arrival time is
+     * getRutgers().getTrafficProfiles().arrivalTime(path, departure).
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @param departure The time of leaving the start intersection
+     * @return The earliest-arriving path, empty if no path exists
+     * @throws IllegalArgumentException if the departure is NaN or infinite
+     */
+    public EdgePath fastestEdgePathAt(Intersection start, Intersection end, double departure) {
+        if (!Double.isFinite(departure)) {
+            throw new IllegalArgumentException("departure must be finite");
+        }
+        TrafficProfiles profiles = rutgers.getTrafficProfiles();
+        if (profiles == null) {
+            throw new IllegalStateException("the network has no traffic profiles; call prepareTrafficProfiles first");
+        }
+        CompactGraph graph = rutgers.getCompactGraph();
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (source == -1 || target == -1 || !rutgers.isConnected(source, target)) {
+            return EdgePath.empty(graph);
+        }
+
+        int n = graph.vertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        int[] predEdge = new int[n];
+        double[] arrival = new double[n];
+        Arrays.fill(predEdge, -1);
+        Arrays.fill(arrival, Double.POSITIVE_INFINITY);
+        IndexMinPQ fringe = new IndexMinPQ(n);
+        long startTime = System.nanoTime();
+        int relaxed = 0;
+
+        arrival[source] = departure;
+        fringe.insert(source, departure);
+
+        int settled = 0;
+        while (!fringe.isEmpty()) {
+            int i = fringe.delMin();
+            settled++;
+            if (i == target) {
+                break;
+            }
+
+            relaxed += offsets[i + 1] - offsets[i];
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int neighborIndex = targets[e];
+                double newArrival = profiles.arrivalTime(graph, e, arrival[i]);
+                if (newArrival < arrival[neighborIndex]) {
+                    arrival[neighborIndex] = newArrival;
+                    predEdge[neighborIndex] = e;
+                    fringe.insertOrDecrease(neighborIndex, newArrival);
+                }
+            }
+        }
+        recordSearch("fastestPathAt", settled, relaxed, fringe.getOperationCount(), startTime);
+        settledCount = settled;
+
+        if (arrival[target] == Double.POSITIVE_INFINITY) {
+            return EdgePath.empty(graph);
+        }
+        return EdgePath.trace(graph, predEdge, target);
+    }
+
+    /**
+     * Finds a path with the least number of intersections from the start to the end intersection
+     * by running two breadth-first searches at once: one forward from the start and one backward
+     * from the end, each a whole level at a time, always growing the smaller frontier.
+     * 
+     * The searches stop at the end of the first level in which they meet, which is enough to find
+     * a path with as many intersections as the one from minimizeIntersections while visiting
+     * roughly half as many intersections on long routes.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @return The path with the least number of turns, or an empty ArrayList if no path exists
+     */
+    public ArrayList<Intersection> minimizeIntersectionsBidirectional(Intersection start, Intersection end) {
+        CompactGraph graph = rutgers.getCompactGraph();
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (source == -1 || target == -1 || !rutgers.isConnected(source, target)) {
             return new ArrayList<>();
         }
-    
-        Intersection current = end;
-        while (current != null) {
-            path.add(current);
-            current = pred[rutgers.findIntersection(current.getCoordinate())];
+
+        int n = graph.vertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] targets = graph.getTargets();
+        int[] reverseOffsets = graph.getReverseOffsets();
+        int[] reverseEdges = graph.getReverseEdges();
+
+        // forwardDist/backwardDist are -1 for intersections a side has not reached
+        int[] forwardDist = new int[n];
+        int[] backwardDist = new int[n];
+        int[] pred = new int[n];
+        int[] succ = new int[n];
+        Arrays.fill(forwardDist, -1);
+        Arrays.fill(backwardDist, -1);
+        Arrays.fill(pred, -1);
+        Arrays.fill(succ, -1);
+        int[] forwardQueue = new int[n];
+        int[] backwardQueue = new int[n];
+        int forwardHead = 0, forwardTail = 0, backwardHead = 0, backwardTail = 0;
+        long startTime = System.nanoTime();
+        int relaxed = 0;
+
+        forwardDist[source] = 0;
+        backwardDist[target] = 0;
+        forwardQueue[forwardTail++] = source;
+        backwardQueue[backwardTail++] = target;
+
+        // The best path found so far crosses the edge meetFrom -> meetTo
+        int best = source == target ? 0 : Integer.MAX_VALUE;
+        int meetFrom = source, meetTo = -1;
+        while (best == Integer.MAX_VALUE && forwardHead < forwardTail && backwardHead < backwardTail) {
+            if (forwardTail - forwardHead <= backwardTail - backwardHead) {
+                int levelEnd = forwardTail;
+                while (forwardHead < levelEnd) {
+                    int u = forwardQueue[forwardHead++];
+                    relaxed += offsets[u + 1] - offsets[u];
+                    for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                        int v = targets[e];
+                        if (backwardDist[v] != -1 && forwardDist[u] + 1 + backwardDist[v] < best) {
+                            best = forwardDist[u] + 1 + backwardDist[v];
+                            meetFrom = u;
+                            meetTo = v;
+                        }
+                        if (forwardDist[v] == -1) {
+                            forwardDist[v] = forwardDist[u] + 1;
+                            pred[v] = u;
+                            forwardQueue[forwardTail++] = v;
+                        }
+                    }
+                }
+            } else {
+                int levelEnd = backwardTail;
+                while (backwardHead < levelEnd) {
+                    int v = backwardQueue[backwardHead++];
+                    relaxed += reverseOffsets[v + 1] - reverseOffsets[v];
+                    for (int r = reverseOffsets[v]; r < reverseOffsets[v + 1]; r++) {
+                        int u = sources[reverseEdges[r]];
+                        if (forwardDist[u] != -1 && forwardDist[u] + 1 + backwardDist[v] < best) {
+                            best = forwardDist[u] + 1 + backwardDist[v];
+                            meetFrom = u;
+                            meetTo = v;
+                        }
+                        if (backwardDist[u] == -1) {
+                            backwardDist[u] = backwardDist[v] + 1;
+                            succ[u] = v;
+                            backwardQueue[backwardTail++] = u;
+                        }
+                    }
+                }
+            }
+        }
+
+        recordSearch("minimizeIntersectionsBidirectional", forwardHead + backwardHead, relaxed, 0, startTime);
+        if (best == Integer.MAX_VALUE) {
+            return new ArrayList<>();
+        }
+        ArrayList<Intersection> path = buildPath(pred, meetFrom);
+        appendSuccessors(path, meetTo, succ);
+        return path;
+    }
+
+    /**
+     * Finds the path with the least traffic from the start to the end intersection by running
+     * Dijkstra's algorithm forward from the start and backward (over incoming blocks) from the end,
+     * always advancing the side with the smaller fringe.
+     * 
+     * The best total seen where the two sides' labels meet is kept, and the search stops once the
+     * smallest distances left on both fringes add up to at least that total. The path has the same
+     * total traffic as the one from fastestPath. getSettledCount() reports the intersections
+     * settled by both sides together.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @return The path with the least traffic, or an empty ArrayList if no path exists
+     */
+    public ArrayList<Intersection> fastestPathBidirectional(Intersection start, Intersection end) {
+        CompactGraph graph = rutgers.getCompactGraph();
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (source == -1 || target == -1 || !rutgers.isConnected(source, target)) {
+            return new ArrayList<>();
+        }
+
+        int n = graph.vertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] sources = graph.getSources();
+        int[] targets = graph.getTargets();
+        int[] reverseOffsets = graph.getReverseOffsets();
+        int[] reverseEdges = graph.getReverseEdges();
+        double[] traffic = graph.getTraffic();
+
+        double[] forwardDist = new double[n];
+        double[] backwardDist = new double[n];
+        int[] pred = new int[n];
+        int[] succ = new int[n];
+        Arrays.fill(forwardDist, Double.POSITIVE_INFINITY);
+        Arrays.fill(backwardDist, Double.POSITIVE_INFINITY);
+        Arrays.fill(pred, -1);
+        Arrays.fill(succ, -1);
+        IndexMinPQ forwardFringe = new IndexMinPQ(n);
+        IndexMinPQ backwardFringe = new IndexMinPQ(n);
+        long startTime = System.nanoTime();
+        int relaxed = 0;
+
+        forwardDist[source] = 0;
+        backwardDist[target] = 0;
+        forwardFringe.insert(source, 0);
+        backwardFringe.insert(target, 0);
+
+        double best = source == target ? 0 : Double.POSITIVE_INFINITY;
+        int meet = source;
+        int settled = 0;
+        while (!forwardFringe.isEmpty() && !backwardFringe.isEmpty()) {
+            if (forwardFringe.minPriority() + backwardFringe.minPriority() >= best) {
+                break;
+            }
+            settled++;
+            if (forwardFringe.size() <= backwardFringe.size()) {
+                int u = forwardFringe.delMin();
+                relaxed += offsets[u + 1] - offsets[u];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int v = targets[e];
+                    double newDist = forwardDist[u] + traffic[e];
+                    if (newDist < forwardDist[v]) {
+                        forwardDist[v] = newDist;
+                        pred[v] = u;
+                        forwardFringe.insertOrDecrease(v, newDist);
+                        if (newDist + backwardDist[v] < best) {
+                            best = newDist + backwardDist[v];
+                            meet = v;
+                        }
+                    }
+                }
+            } else {
+                int v = backwardFringe.delMin();
+                relaxed += reverseOffsets[v + 1] - reverseOffsets[v];
+                for (int r = reverseOffsets[v]; r < reverseOffsets[v + 1]; r++) {
+                    int e = reverseEdges[r];
+                    int u = sources[e];
+                    double newDist = backwardDist[v] + traffic[e];
+                    if (newDist < backwardDist[u]) {
+                        backwardDist[u] = newDist;
+                        succ[u] = v;
+                        backwardFringe.insertOrDecrease(u, newDist);
+                        if (forwardDist[u] + newDist < best) {
+                            best = forwardDist[u] + newDist;
+                            meet = u;
+                        }
+                    }
+                }
+            }
+        }
+
+        recordSearch("fastestPathBidirectional", settled, relaxed,
+                forwardFringe.getOperationCount() + backwardFringe.getOperationCount(), startTime);
+        settledCount = settled;
+        if (best == Double.POSITIVE_INFINITY) {
+            return new ArrayList<>();
+        }
+        ArrayList<Intersection> path = buildPath(pred, meet);
+        appendSuccessors(path, succ[meet], succ);
+        return path;
+    }
+
+    /**
+     * Finds the path with the least traffic from the start to the end intersection using A* search.
+     * 
+     * The fringe is ordered by the traffic so far plus a lower bound on the traffic remaining:
+     * the straight-line distance to the end scaled by the smallest traffic factor in the map.
+     * Since no block is shorter than the segment between its endpoints, the bound never
+     * overestimates, so the path has the same total traffic as the one from fastestPath while
+     * fewer intersections are settled on the way. Use getSettledCount() to compare the two.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @return The path with the least traffic, or an empty ArrayList if no path exists
+     */
+    public ArrayList<Intersection> astarPath(Intersection start, Intersection end) {
+        CompactGraph graph = rutgers.getCompactGraph();
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (source == -1 || target == -1 || !rutgers.isConnected(source, target)) {
+            return new ArrayList<>();
+        }
+
+        int n = graph.vertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        int[] pred = new int[n];
+        double[] d = new double[n];
+        boolean[] closed = new boolean[n];
+        Arrays.fill(pred, -1);
+        Arrays.fill(d, Double.POSITIVE_INFINITY);
+        IndexMinPQ fringe = new IndexMinPQ(n);
+        long startTime = System.nanoTime();
+        int relaxed = 0;
+
+        d[source] = 0;
+        fringe.insert(source, graph.trafficLowerBound(source, target));
+
+        int settled = 0;
+        while (!fringe.isEmpty()) {
+            int i = fringe.delMin();
+            closed[i] = true;
+            settled++;
+            if (i == target) {
+                break;
+            }
+
+            relaxed += offsets[i + 1] - offsets[i];
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int neighborIndex = targets[e];
+                if (closed[neighborIndex]) {
+                    continue;
+                }
+                double newDist = d[i] + traffic[e];
+                if (newDist < d[neighborIndex]) {
+                    d[neighborIndex] = newDist;
+                    pred[neighborIndex] = i;
+                    fringe.insertOrDecrease(neighborIndex, newDist + graph.trafficLowerBound(neighborIndex, target));
+                }
+            }
+        }
+        recordSearch("astarPath", settled, relaxed, fringe.getOperationCount(), startTime);
+        settledCount = settled;
+
+        if (d[target] == Double.POSITIVE_INFINITY) {
+            return new ArrayList<>();
+        }
+        return buildPath(pred, target);
+    }
+
+    /**
+     * Chooses landmark intersections and computes the traffic between each of them and
+     * every intersection, so that later landmarkPath queries settle fewer intersections.
+     * 
+     * @param count The number of landmarks; a handful (such as 8) is usually enough
+     */
+    public void prepareLandmarks(int count) {
+        landmarks = Landmarks.select(rutgers.getCompactGraph(), count);
+        landmarksVersion = rutgers.getTrafficVersion();
+    }
+
+    /**
+     * Prepares landmarks as prepareLandmarks(count) does, but first tries to load them from a
+     * file, and saves them to it if they had to be computed. Keeping the file next to the map
+     * (for example, Busch.in.landmarks for Busch.in) means they are only computed once per map,
+     * as long as the traffic factors are drawn from the same seed.
+     * 
+     * @param count The number of landmarks
+     * @param filename The name of the landmark file
+     * @return true if the landmarks were loaded from the file, false if they were computed
+     */
+    public boolean prepareLandmarks(int count, String filename) {
+        CompactGraph graph = rutgers.getCompactGraph();
+        if (new File(filename).isFile()) {
+            try {
+                Landmarks loaded = Landmarks.load(graph, filename);
+                if (loaded.getLandmarks().length == count) {
+                    landmarks = loaded;
+                    landmarksVersion = rutgers.getTrafficVersion();
+                    return true;
+                }
+            } catch (IllegalStateException e) {
+                // Saved for another map or other traffic; compute them again below
+            }
+        }
+        prepareLandmarks(count);
+        landmarks.save(filename);
+        return false;
+    }
+
+    /**
+     * Finds the path with the least traffic from the start to the end intersection using A* search
+     * guided by landmarks, preparing 8 of them first if needed. The fringe is ordered by the traffic
+     * so far plus the larger of the landmark bound and astarPath's straight-line bound on the traffic
+     * remaining, so the path has the same total traffic as the one from fastestPath.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @return The path with the least traffic, or an empty ArrayList if no path exists
+     */
+    public ArrayList<Intersection> landmarkPath(Intersection start, Intersection end) {
+        CompactGraph graph = rutgers.getCompactGraph();
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (source == -1 || target == -1 || !rutgers.isConnected(source, target)) {
+            return new ArrayList<>();
+        }
+        if (landmarks == null || landmarks.getGraph() != graph || landmarksVersion != rutgers.getTrafficVersion()) {
+            prepareLandmarks(8);
+        }
+
+        int n = graph.vertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        int[] pred = new int[n];
+        double[] d = new double[n];
+        boolean[] closed = new boolean[n];
+        Arrays.fill(pred, -1);
+        Arrays.fill(d, Double.POSITIVE_INFINITY);
+        IndexMinPQ fringe = new IndexMinPQ(n);
+        long startTime = System.nanoTime();
+        int relaxed = 0;
+
+        d[source] = 0;
+        fringe.insert(source, Math.max(landmarks.lowerBound(source, target), graph.trafficLowerBound(source, target)));
+
+        int settled = 0;
+        while (!fringe.isEmpty()) {
+            int i = fringe.delMin();
+            closed[i] = true;
+            settled++;
+            if (i == target) {
+                break;
+            }
+
+            relaxed += offsets[i + 1] - offsets[i];
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int neighborIndex = targets[e];
+                if (closed[neighborIndex]) {
+                    continue;
+                }
+                double newDist = d[i] + traffic[e];
+                if (newDist < d[neighborIndex]) {
+                    d[neighborIndex] = newDist;
+                    pred[neighborIndex] = i;
+                    double bound = Math.max(landmarks.lowerBound(neighborIndex, target), graph.trafficLowerBound(neighborIndex, target));
+                    fringe.insertOrDecrease(neighborIndex, newDist + bound);
+                }
+            }
+        }
+        recordSearch("landmarkPath", settled, relaxed, fringe.getOperationCount(), startTime);
+        settledCount = settled;
+
+        if (d[target] == Double.POSITIVE_INFINITY) {
+            return new ArrayList<>();
+        }
+        return buildPath(pred, target);
+    }
+
+    /**
+     * Finds up to k routes from the start to the end intersection that never visit an
+     * intersection twice, in order of increasing traffic, each with its pathInformation.
+     * The first route has the same traffic as the one from fastestPath; the others are
+     * the best alternatives to it.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @param k The number of routes wanted
+     * @return the routes, fewer than k if there are not that many, or an empty ArrayList if no path exists
+     */
+    public ArrayList<Route> alternativeRoutes(Intersection start, Intersection end, int k) {
+        ArrayList<Route> routes = new ArrayList<>();
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (source == -1 || target == -1 || !rutgers.isConnected(source, target) || k < 1) {
+            return routes;
+        }
+
+        Intersection[] intersections = rutgers.getIntersections();
+        for (int[] vertices : new KShortestPaths(rutgers.getCompactGraph(), source, target).paths(k)) {
+            ArrayList<Intersection> path = new ArrayList<>();
+            for (int v : vertices) {
+                path.add(intersections[v]);
+            }
+            routes.add(new Route(Route.Type.FASTEST_PATH, path, pathInformation(path)));
+        }
+        return routes;
+    }
+
+    /**
+     * Finds every intersection that can be reached from the source with a total traffic of
+     * at most the budget, along with the blocks inside that region and on its boundary.
+     * 
+     * Uses Dijkstra's algorithm, never adding an intersection to the fringe beyond the budget,
+     * so it only settles the intersections inside the region.
+     * 
+     * @param source The source intersection
+     * @param budget The largest total traffic allowed
+     * @return the reachable region, which is empty if source is not in the map or the budget is negative
+     */
+    public Isochrone isochrone(Intersection source, double budget) {
+        ArrayList<Intersection> reached = new ArrayList<>();
+        ArrayList<Block> blocks = new ArrayList<>();
+        ArrayList<Block> boundaryBlocks = new ArrayList<>();
+        int s = rutgers.findIntersection(source.getCoordinate());
+        if (s == -1 || !(budget >= 0)) {
+            return new Isochrone(source, budget, reached, new double[0], blocks, boundaryBlocks);
+        }
+
+        CompactGraph graph = rutgers.getCompactGraph();
+        int n = graph.vertexCount();
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        Block[] edgeBlocks = graph.getBlocks();
+        Intersection[] intersections = graph.getVertices();
+        double[] d = new double[n];
+        double[] reachedTraffic = new double[n];
+        Arrays.fill(d, Double.POSITIVE_INFINITY);
+        IndexMinPQ fringe = new IndexMinPQ(n);
+
+        d[s] = 0;
+        fringe.insert(s, 0);
+        while (!fringe.isEmpty()) {
+            int i = fringe.delMin();
+            reachedTraffic[reached.size()] = d[i];
+            reached.add(intersections[i]);
+
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int neighborIndex = targets[e];
+                double newDist = d[i] + traffic[e];
+                if (newDist > budget) {
+                    boundaryBlocks.add(edgeBlocks[e]);
+                    continue;
+                }
+                blocks.add(edgeBlocks[e]);
+                if (newDist < d[neighborIndex]) {
+                    d[neighborIndex] = newDist;
+                    fringe.insertOrDecrease(neighborIndex, newDist);
+                }
+            }
+        }
+        return new Isochrone(source, budget, reached, Arrays.copyOf(reachedTraffic, reached.size()), blocks, boundaryBlocks);
+    }
+
+    /**
+     * Returns the tree of least-traffic paths from a source intersection to every other.
+     * 
+     * The most recent tree is retained, so while the source stays the same repeated calls
+     * reuse it instead of searching again. Traffic changes made through updateTrafficFactor
+     * repair the retained tree; any other change to the network rebuilds it.
+     * 
+     * @param source The source intersection
+     * @return the shortest path tree from source, or null if source is not in the map
+     */
+    public ShortestPathTree shortestPathTree(Intersection source) {
+        int index = rutgers.findIntersection(source.getCoordinate());
+        if (index == -1) {
+            return null;
+        }
+        CompactGraph graph = rutgers.getCompactGraph();
+        if (retainedTree == null || retainedTree.getSource() != index || retainedTree.getGraph() != graph
+                || retainedTreeVersion != rutgers.getTrafficVersion()) {
+            long startTime = System.nanoTime();
+            retainedTree = new ShortestPathTree(graph, index);
+            retainedTreeVersion = rutgers.getTrafficVersion();
+            recordSearch("shortestPathTree", retainedTree.getSettledCount(), retainedTree.getRelaxedCount(),
+                    retainedTree.getHeapOperations(), startTime);
+        }
+        return retainedTree;
+    }
+
+    /**
+     * Changes the traffic factor of a block, as live traffic conditions change.
+     * 
+     * Only the given direction of the street block changes; pass the block's reversed
+     * copy as well to update both. Cached routes and the contraction hierarchy are
+     * recomputed when next needed, while the retained shortest path tree is repaired
+     * in place, re-settling only the intersections whose least traffic depends on the block.
+     * 
+     * @param block The block whose traffic changed
+     * @param trafficFactor The new traffic factor, which must not be negative
+     * @return the number of intersections of the retained tree that were settled again
+     */
+    public int updateTrafficFactor(Block block, double trafficFactor) {
+        boolean treeCurrent = retainedTree != null && retainedTreeVersion == rutgers.getTrafficVersion();
+        int e = rutgers.updateTrafficFactor(block, trafficFactor);
+        if (!treeCurrent || e == -1 || retainedTree.getGraph() != rutgers.getCompactGraph()) {
+            return 0;
+        }
+        retainedTreeVersion = rutgers.getTrafficVersion();
+        return retainedTree.repair(e);
+    }
+
+    /**
+     * Finds the path with the least traffic from the start to the end intersection by reading
+     * it off the shortest path tree from start, which is computed once and then reused for
+     * every destination. The path is the same as the one from fastestPath.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @return The path with the least traffic, or an empty ArrayList if no path exists
+     */
+    public ArrayList<Intersection> treePath(Intersection start, Intersection end) {
+        return treeEdgePath(start, end).getIntersections();
+    }
+
+    /**
+     * Finds the same path as treePath, as the blocks it takes.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @return The path with the least traffic, empty if no path exists
+     */
+    public EdgePath treeEdgePath(Intersection start, Intersection end) {
+        ShortestPathTree tree = shortestPathTree(start);
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (tree == null || target == -1) {
+            return EdgePath.empty(rutgers.getCompactGraph());
+        }
+        return tree.edgePathTo(target);
+    }
+
+    /**
+     * Preprocesses the map into a contraction hierarchy over block traffic, so that
+     * later hierarchyPath queries only search a small part of the map.
+     * 
+     * This takes longer than a single fastestPath call, so it pays off when many
+     * queries are answered on the same map.
+     */
+    public void prepareContractionHierarchy() {
+        hierarchy = new ContractionHierarchy(rutgers.getCompactGraph());
+        hierarchyVersion = rutgers.getTrafficVersion();
+    }
+
+    /**
+     * Finds the path with the least traffic from the start to the end intersection using
+     * the contraction hierarchy, preparing it first if needed. The path has the same total
+     * traffic as the one from fastestPath.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @return The path with the least traffic, or an empty ArrayList if no path exists
+     */
+    public ArrayList<Intersection> hierarchyPath(Intersection start, Intersection end) {
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        if (source == -1 || target == -1) {
+            return new ArrayList<>();
+        }
+        if (hierarchy == null || hierarchy.getGraph() != rutgers.getCompactGraph()
+                || hierarchyVersion != rutgers.getTrafficVersion()) {
+            prepareContractionHierarchy();
+        }
+
+        Intersection[] intersections = rutgers.getIntersections();
+        ArrayList<Intersection> path = new ArrayList<>();
+        for (int v : hierarchy.path(source, target)) {
+            path.add(intersections[v]);
+        }
+        return path;
+    }
+
+    /**
+     * Starts measuring path searches: from now on minimizeIntersections, fastestPath, their
+     * bidirectional versions, astarPath, landmarkPath, fastestPathAt, and shortest path tree builds record their cost
+     * in getMetrics(). While metrics are disabled the searches only keep a few local counters.
+     * Searches may run on several threads at once while metrics are enabled.
+     */
+    public void enableMetrics() {
+        if (metrics == null) {
+            metrics = new SearchMetrics();
+        }
+    }
+
+    /**
+     * Stops measuring path searches and discards the measurements.
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Records a finished search in the metrics, if they are enabled.
+     * @param startTime the System.nanoTime() at which the search started
+     */
+    private void recordSearch(String method, int settled, int relaxed, long heapOperations, long startTime) {
+        SearchMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.record(method, settled, relaxed, heapOperations, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Returns the measurements of path searches.
+     * 
+     * @return the metrics, or null if they are not enabled
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of intersections removed from the fringe by the most recent
+     * call to fastestPath or astarPath.
+     * 
+     * @return the number of intersections settled by the last search
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    /**
+     * Follows a predecessor array back from the given vertex and returns the
+     * corresponding intersections in order from the search source.
+     * 
+     * @param pred pred[v] is the index of the vertex before v on the path, or -1 at the source
+     * @param target the index of the last intersection on the path
+     * @return the path from the source to the target
+     */
+    private ArrayList<Intersection> buildPath(int[] pred, int target) {
+        Intersection[] intersections = rutgers.getIntersections();
+        ArrayList<Intersection> path = new ArrayList<>();
+        for (int v = target; v != -1; v = pred[v]) {
+            path.add(intersections[v]);
         }
         Collections.reverse(path);
         return path;
     }
+
+    /**
+     * Appends the given vertex and the vertices after it in a successor array to a path.
+     * 
+     * @param path the path to extend
+     * @param v the index of the first intersection to append, or -1 to append nothing
+     * @param succ succ[v] is the index of the vertex after v on the path, or -1 at the end
+     */
+    private void appendSuccessors(ArrayList<Intersection> path, int v, int[] succ) {
+        Intersection[] intersections = rutgers.getIntersections();
+        for (; v != -1; v = succ[v]) {
+            path.add(intersections[v]);
+        }
+    }
+
     /**
      * Calculates the total length, average experienced traffic factor, and total traffic for a given path of blocks.
      * 
@@ -350,6 +1225,116 @@ public class RUMaps {
         return new double[]{totalLength, averageTrafficFactor, totalTraffic};
     }
 
+    /**
+     * Calculates the total length, average experienced traffic factor, and total traffic for a
+     * path found as blocks, such as one from fastestEdgePath. Since the path says which block
+     * joins each pair of intersections, this takes time proportional to its number of blocks.
+     * 
+     * @param path The path of blocks
+     * @return A double array containing the total length, average experienced traffic factor, and total traffic of the path (in that order)
+     */
+    public double[] pathInformation(EdgePath path) {
+        return path.information();
+    }
+
+    /**
+     * Returns the route between two intersections for the given kind of query, along with
+     * its pathInformation, reusing the result of an earlier identical query when possible.
+     * 
+     * Up to getRouteCache().getCapacity() routes are kept, evicting the least recently used;
+     * all of them are discarded when the network's traffic changes.
+     * 
+     * @param start The starting intersection
+     * @param end The destination intersection
+     * @param type MINIMIZE_INTERSECTIONS for minimizeIntersections, FASTEST_PATH for fastestPath
+     * @return the route and its information
+     */
+    public Route cachedRoute(Intersection start, Intersection end, Route.Type type) {
+        int source = rutgers.findIntersection(start.getCoordinate());
+        int target = rutgers.findIntersection(end.getCoordinate());
+        int version = rutgers.getTrafficVersion();
+        Route route = routeCache.get(source, target, type, version);
+        if (route == null) {
+            EdgePath path = type == Route.Type.FASTEST_PATH ? treeEdgePath(start, end) : minimizeIntersectionsEdgePath(start, end);
+            route = new Route(type, path.getIntersections(), pathInformation(path));
+            routeCache.put(source, target, route, version);
+        }
+        return route;
+    }
+
+    /**
+     * Returns the intersection nearest to a point on the map.
+     * 
+     * @param point The point, which need not be an intersection
+     * @return The nearest intersection, or null if the map has none
+     */
+    public Intersection nearestIntersection(Coordinate point) {
+        int index = rutgers.nearestIntersection(point.getX(), point.getY());
+        return index == -1 ? null : rutgers.getIntersections()[index];
+    }
+
+    /**
+     * Returns the route between two arbitrary points on the map, snapping each to its nearest
+     * intersection and then answering as cachedRoute does. Snapping takes O(log n) time.
+     * 
+     * @param from The starting point
+     * @param to The destination point
+     * @param type MINIMIZE_INTERSECTIONS for minimizeIntersections, FASTEST_PATH for fastestPath
+     * @return the route between the nearest intersections and its information
+     */
+    public Route routeBetween(Coordinate from, Coordinate to, Route.Type type) {
+        Intersection start = nearestIntersection(from);
+        Intersection end = nearestIntersection(to);
+        if (start == null || end == null) {
+            return new Route(type, new ArrayList<>(), new double[]{0, 0, 0});
+        }
+        return cachedRoute(start, end, type);
+    }
+
+    /**
+     * Finds the route between each start intersection and the end intersection at the same
+     * position, along with its pathInformation, running the searches in parallel.
+     * 
+     * The routes are computed on a snapshot of the current traffic, and are the same
+     * as the ones from minimizeIntersections or fastestPath. The snapshot is kept and reused
+     * by later batches until the traffic changes.
+     * 
+     * @param starts The starting intersections
+     * @param ends The destination intersections, one for each starting intersection
+     * @param type MINIMIZE_INTERSECTIONS for minimizeIntersections, FASTEST_PATH for fastestPath
+     * @return the routes, in the same order as the pairs
+     */
+    public ArrayList<Route> batchRoutes(ArrayList<Intersection> starts, ArrayList<Intersection> ends, Route.Type type) {
+        if (starts.size() != ends.size()) {
+            throw new IllegalArgumentException("starts and ends differ in size");
+        }
+        int[] sources = new int[starts.size()];
+        int[] targets = new int[ends.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = rutgers.findIntersection(starts.get(i).getCoordinate());
+            targets[i] = rutgers.findIntersection(ends.get(i).getCoordinate());
+        }
+        if (batchRouter == null || batchRouter.getGraph() != rutgers.getCompactGraph()
+                || batchRouterVersion != rutgers.getTrafficVersion()) {
+            batchRouter = new BatchRouter(rutgers);
+            batchRouterVersion = rutgers.getTrafficVersion();
+        }
+        return new ArrayList<>(Arrays.asList(batchRouter.route(sources, targets, type)));
+    }
+
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Replaces the route cache with an empty one of the given capacity.
+     * 
+     * @param capacity the maximum number of routes to keep
+     */
+    public void setRouteCacheCapacity(int capacity) {
+        routeCache = new RouteCache(capacity);
+    }
+
     /**
      * Calculates the Euclidean distance between two coordinates.
      * PROVIDED - do not modify
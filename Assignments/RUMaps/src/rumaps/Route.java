@@ -0,0 +1,61 @@
+package rumaps;
+
+import java.util.ArrayList;
+
+/**
+ * The Route class holds the result of a path query: the intersections on the path
+ * and the path's information as computed by RUMaps.pathInformation.
+ * It contains the following attributes:
+ * - type - the kind of query that produced the path
+ * - path - intersections on the path, from start to end (empty if no path exists)
+ * - information - total length, average experienced traffic factor, and total traffic of the path
+ */
+public class Route {
+    /**
+     * The kinds of path query a Route can answer.
+     */
+    public enum Type {
+        MINIMIZE_INTERSECTIONS,
+        FASTEST_PATH
+    }
+
+    private final Type type;
+    private final ArrayList<Intersection> path;
+    private final double[] information;
+
+    public Route(Type type, ArrayList<Intersection> path, double[] information) {
+        this.type = type;
+        this.path = path;
+        this.information = information;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns a copy of the intersections on this route.
+     * @return the path from start to end, or an empty list if no path exists
+     */
+    public ArrayList<Intersection> getPath() {
+        return new ArrayList<>(path);
+    }
+
+    /**
+     * Returns a copy of this route's information.
+     * @return the total length, average experienced traffic factor, and total traffic (in that order)
+     */
+    public double[] getInformation() {
+        return information.clone();
+    }
+
+    public boolean isEmpty() {
+        return path.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "Route [type=" + type + ", path=" + path + ", length=" + information[0]
+                + ", trafficFactor=" + information[1] + ", traffic=" + information[2] + "]";
+    }
+}
@@ -0,0 +1,83 @@
+package rumaps;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The RouteCache class is a bounded least-recently-used cache of Routes keyed on
+ * (start index, end index, query type).
+ *
+ * Entries are only valid for the traffic values they were computed with, so every
+ * lookup passes the Network's current traffic version; when it differs from the
+ * version the entries were stored under, the whole cache is cleared.
+ */
+public class RouteCache {
+    private final int capacity;
+    private final LinkedHashMap<Long, Route> routes;
+    private int trafficVersion;
+
+    /**
+     * Creates an empty cache.
+     * @param capacity the maximum number of routes to keep
+     */
+    public RouteCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        // Access order makes iteration start at the least recently used entry
+        routes = new LinkedHashMap<Long, Route>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Route> eldest) {
+                return size() > RouteCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached route, marking it as most recently used.
+     * @param start the index of the starting intersection
+     * @param end the index of the destination intersection
+     * @param type the kind of query
+     * @param trafficVersion the network's current traffic version
+     * @return the cached route, or null if there is none
+     */
+    public Route get(int start, int end, Route.Type type, int trafficVersion) {
+        validate(trafficVersion);
+        return routes.get(key(start, end, type));
+    }
+
+    /**
+     * Stores a route, evicting the least recently used route if the cache is full.
+     * @param start the index of the starting intersection
+     * @param end the index of the destination intersection
+     * @param route the route to store
+     * @param trafficVersion the traffic version the route was computed with
+     */
+    public void put(int start, int end, Route route, int trafficVersion) {
+        validate(trafficVersion);
+        routes.put(key(start, end, route.getType()), route);
+    }
+
+    public void clear() {
+        routes.clear();
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void validate(int trafficVersion) {
+        if (trafficVersion != this.trafficVersion) {
+            routes.clear();
+            this.trafficVersion = trafficVersion;
+        }
+    }
+
+    private static Long key(int start, int end, Route.Type type) {
+        // Indices are non-negative ints, leaving two low bits for up to four query types
+        return (long) start << 33 | (long) end << 2 | type.ordinal();
+    }
+}
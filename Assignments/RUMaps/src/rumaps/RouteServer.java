@@ -0,0 +1,289 @@
+package rumaps;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The RouteServer class answers RUMaps queries over HTTP without the GUI. A map is loaded
+ * once and every request is answered against it; run it with
+ *
+ *     java -cp bin rumaps.RouteServer [map file] [port]
+ *
+ * from the RUMaps directory (Busch.in and port 8080 by default). It only listens on the
+ * loopback address. Points are given as x,y map coordinates and snapped to the nearest
+ * intersection; every response is JSON, with points as [x, y] pairs:
+ * - GET /route?from=x,y&to=x,y[&type=fastest|fewest] - the path (fastestPath by default, or
+ *   minimizeIntersections) with its length, trafficFactor, and traffic
+ * - GET /isochrone?from=x,y&budget=b - the intersections within a traffic budget, with the
+ *   least traffic to each
+ * - GET /reachable?from=x,y - the intersections reachable at all
+ * Malformed queries get status 400, unknown paths 404, and methods other than GET 405.
+ *
+ * Each request runs on a thread of its own: a virtual thread where the JDK has them
+ * (Java 21 and later), otherwise a thread from a cached pool. The requests share one
+ * network. Everything a query builds lazily (the CSR graph, connected components, and the
+ * 2-d tree) is built before the server starts, and after that the queries used do not
+ * change the network: Network.isConnected compares precomputed component ids.
+ * They do write one field, the RUMaps settled count, which concurrent searches overwrite
+ * in no particular order; getSettledCount means nothing while the server runs. Nothing may
+ * change the traffic while the server runs.
+ */
+public class RouteServer {
+    private final RUMaps rumaps;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Prepares a server for a loaded map. Responses are sent with Nagle's algorithm on
+     * unless the JVM was started with -Dsun.net.httpserver.nodelay=true, as main arranges;
+     * with it on, each response waits on the client's delayed ACK, about 40 ms.
+     *
+     * @param rumaps the map to answer queries on
+     * @param port the port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public RouteServer(RUMaps rumaps, int port) throws IOException {
+        this.rumaps = rumaps;
+        Network network = rumaps.getRutgers();
+        network.getCompactGraph();
+        if (network.getNextIndex() > 0) network.isConnected(0, 0);
+        network.nearestIntersection(0, 0);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = newThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/route", exchange -> handle(exchange, this::route));
+        server.createContext("/isochrone", exchange -> handle(exchange, this::isochrone));
+        server.createContext("/reachable", exchange -> handle(exchange, this::reachable));
+        server.createContext("/", exchange -> handle(exchange, query -> {
+            throw new NotFoundException();
+        }));
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Without TCP_NODELAY, the headers and body of each response go out in separate
+        // segments and the body waits on the client's delayed ACK. The JDK's server reads
+        // this property once, when it first starts, for every server in the JVM
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        String map = args.length > 0 ? args[0] : "Busch.in";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        StdRandom.setSeed(2024); // same traffic factors as the Driver
+        RouteServer routeServer = new RouteServer(MapLoader.load(null, map), port);
+        routeServer.start();
+        System.out.println("Serving " + map + " at http://localhost:" + routeServer.getPort() + "/");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to a second for those in progress, and
+     * releases the port and threads.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task if the running JDK has them,
+     * or one that reuses idle platform threads. Looked up reflectively so the class still
+     * compiles and runs on Java 17.
+     */
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private String route(HashMap<String, String> query) {
+        Intersection start = intersection(query, "from");
+        Intersection end = intersection(query, "to");
+        String type = query.getOrDefault("type", "fastest");
+        EdgePath path;
+        if (type.equals("fastest")) {
+            path = rumaps.fastestEdgePath(start, end);
+        } else if (type.equals("fewest")) {
+            path = rumaps.minimizeIntersectionsEdgePath(start, end);
+        } else {
+            throw new IllegalArgumentException("type must be fastest or fewest");
+        }
+        double[] information = rumaps.pathInformation(path);
+        StringBuilder json = new StringBuilder();
+        json.append("{\"type\":\"").append(type).append("\",\"path\":");
+        appendPoints(json, path.getIntersections());
+        json.append(",\"length\":").append(information[0])
+            .append(",\"trafficFactor\":").append(information[1])
+            .append(",\"traffic\":").append(information[2]).append('}');
+        return json.toString();
+    }
+
+    private String isochrone(HashMap<String, String> query) {
+        Intersection source = intersection(query, "from");
+        double budget = number(query, "budget");
+        Isochrone isochrone = rumaps.isochrone(source, budget);
+        StringBuilder json = new StringBuilder();
+        json.append("{\"source\":");
+        appendPoint(json, isochrone.getSource());
+        json.append(",\"budget\":").append(budget).append(",\"intersections\":");
+        appendPoints(json, isochrone.getIntersections());
+        json.append(",\"traffic\":[");
+        double[] traffic = isochrone.getTraffic();
+        for (int i = 0; i < traffic.length; i++) {
+            if (i > 0) json.append(',');
+            json.append(traffic[i]);
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    private String reachable(HashMap<String, String> query) {
+        Intersection source = intersection(query, "from");
+        StringBuilder json = new StringBuilder();
+        json.append("{\"source\":");
+        appendPoint(json, source);
+        json.append(",\"intersections\":");
+        appendPoints(json, rumaps.reachableIntersections(source));
+        json.append('}');
+        return json.toString();
+    }
+
+    private interface Query {
+        /**
+         * Answers a request given its query parameters.
+         * @return the JSON response
+         * @throws IllegalArgumentException if the parameters are malformed
+         */
+        String answer(HashMap<String, String> query);
+    }
+
+    /**
+     * Thrown for requests to a path that has no handler.
+     */
+    private static class NotFoundException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static void handle(HttpExchange exchange, Query handler) throws IOException {
+        int status;
+        String body;
+        if (!exchange.getRequestMethod().equals("GET")) {
+            status = 405;
+            body = error("only GET is supported");
+            exchange.getResponseHeaders().set("Allow", "GET");
+        } else {
+            try {
+                body = handler.answer(parseQuery(exchange.getRequestURI().getRawQuery()));
+                status = 200;
+            } catch (NotFoundException e) {
+                status = 404;
+                body = error("no such endpoint; use /route, /isochrone, or /reachable");
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                body = error(e.getMessage());
+            } catch (RuntimeException e) {
+                status = 500;
+                body = error(e.toString());
+            }
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static HashMap<String, String> parseQuery(String rawQuery) {
+        HashMap<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals == -1 ? pair : pair.substring(0, equals);
+            String value = equals == -1 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    /**
+     * Returns the intersection nearest to the x,y point in a query parameter.
+     */
+    private Intersection intersection(HashMap<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("missing " + name + "=x,y");
+        }
+        String[] parts = value.split(",");
+        Coordinate point;
+        try {
+            if (parts.length != 2) throw new NumberFormatException();
+            point = new Coordinate(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be x,y with integer coordinates");
+        }
+        Intersection intersection = rumaps.nearestIntersection(point);
+        if (intersection == null) {
+            throw new IllegalArgumentException("the map has no intersections");
+        }
+        return intersection;
+    }
+
+    private static double number(HashMap<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("missing " + name);
+        }
+        try {
+            double number = Double.parseDouble(value);
+            if (Double.isNaN(number) || Double.isInfinite(number)) throw new NumberFormatException();
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a finite number");
+        }
+    }
+
+    private static void appendPoint(StringBuilder json, Intersection intersection) {
+        Coordinate c = intersection.getCoordinate();
+        json.append('[').append(c.getX()).append(',').append(c.getY()).append(']');
+    }
+
+    private static void appendPoints(StringBuilder json, ArrayList<Intersection> intersections) {
+        json.append('[');
+        for (int i = 0; i < intersections.size(); i++) {
+            if (i > 0) json.append(',');
+            appendPoint(json, intersections.get(i));
+        }
+        json.append(']');
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":\"");
+        for (char c : message.toCharArray()) {
+            if (c == '"' || c == '\\') json.append('\\');
+            if (c >= ' ') json.append(c);
+        }
+        return json.append("\"}").toString();
+    }
+}
@@ -0,0 +1,226 @@
+package rumaps;
+
+import java.util.LinkedHashMap;
+
+/**
+ * The SearchMetrics class collects measurements of the path searches run by a RUMaps
+ * object, once enabled with RUMaps.enableMetrics. For every search it records:
+ * - settled - intersections removed from the fringe (or queue, for breadth-first searches)
+ * - relaxed - blocks examined leaving (or, searching backward, entering) settled intersections
+ * - heapOperations - inserts, decrease-keys, and delete-mins on the priority queues (0 for breadth-first searches)
+ * - nanos - wall time of the search
+ *
+ * The most recent search is kept as a Sample, and every search is also added to a set
+ * of histograms per method, so the spread of costs across many queries can be seen.
+ *
+ * Every method is synchronized, as are those of the histograms, so searches running on
+ * several threads at once can record into the same metrics. getLast then returns whichever
+ * search finished last.
+ */
+public class SearchMetrics {
+    private final LinkedHashMap<String, MethodStats> stats = new LinkedHashMap<>();
+    private Sample last;
+
+    /**
+     * Records one search.
+     * @param method the name of the RUMaps method that ran it
+     * @param settled intersections settled
+     * @param relaxed blocks examined
+     * @param heapOperations priority queue operations
+     * @param nanos wall time in nanoseconds
+     */
+    public synchronized void record(String method, int settled, int relaxed, long heapOperations, long nanos) {
+        last = new Sample(method, settled, relaxed, heapOperations, nanos);
+        MethodStats methodStats = stats.get(method);
+        if (methodStats == null) {
+            methodStats = new MethodStats();
+            stats.put(method, methodStats);
+        }
+        methodStats.settled.record(settled);
+        methodStats.relaxed.record(relaxed);
+        methodStats.heapOperations.record(heapOperations);
+        methodStats.nanos.record(nanos);
+    }
+
+    /**
+     * Returns the most recent search.
+     * @return the sample of the last search recorded, or null if there is none
+     */
+    public synchronized Sample getLast() {
+        return last;
+    }
+
+    /**
+     * Returns the most recent search and forgets it, so that a later call returns null
+     * unless another search has run in between (for example, when a query was answered
+     * from a cache).
+     * @return the sample of the last search recorded, or null if there is none
+     */
+    public synchronized Sample takeLast() {
+        Sample sample = last;
+        last = null;
+        return sample;
+    }
+
+    /**
+     * Returns the histograms of one method's searches.
+     * @param method the name of the RUMaps method
+     * @return its statistics, or null if it has not run since the metrics were enabled or reset
+     */
+    public synchronized MethodStats getStats(String method) {
+        return stats.get(method);
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+        last = null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String method : stats.keySet()) {
+            sb.append(method).append(": ").append(stats.get(method)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The measurements of a single search.
+     */
+    public static class Sample {
+        private final String method;
+        private final int settled;
+        private final int relaxed;
+        private final long heapOperations;
+        private final long nanos;
+
+        public Sample(String method, int settled, int relaxed, long heapOperations, long nanos) {
+            this.method = method;
+            this.settled = settled;
+            this.relaxed = relaxed;
+            this.heapOperations = heapOperations;
+            this.nanos = nanos;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public int getSettled() {
+            return settled;
+        }
+
+        public int getRelaxed() {
+            return relaxed;
+        }
+
+        public long getHeapOperations() {
+            return heapOperations;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: settled %d, relaxed %d, heap ops %d, %.3f ms",
+                    method, settled, relaxed, heapOperations, nanos / 1e6);
+        }
+    }
+
+    /**
+     * Histograms of each measurement over all searches by one method.
+     */
+    public static class MethodStats {
+        private final Histogram settled = new Histogram();
+        private final Histogram relaxed = new Histogram();
+        private final Histogram heapOperations = new Histogram();
+        private final Histogram nanos = new Histogram();
+
+        public Histogram getSettled() {
+            return settled;
+        }
+
+        public Histogram getRelaxed() {
+            return relaxed;
+        }
+
+        public Histogram getHeapOperations() {
+            return heapOperations;
+        }
+
+        public Histogram getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return nanos.getCount() + " searches; settled " + settled + "; relaxed " + relaxed
+                    + "; heap ops " + heapOperations + "; ns " + nanos;
+        }
+    }
+
+    /**
+     * A histogram of non-negative values with one bucket per power of two: bucket 0 counts
+     * zeros and bucket b counts values from 2^(b-1) to 2^b - 1. Percentiles are reported as
+     * the upper end of the bucket they fall in, so they are within a factor of two.
+     */
+    public static class Histogram {
+        private final long[] buckets = new long[64];
+        private long count;
+        private long sum;
+        private long max;
+
+        public synchronized void record(long value) {
+            value = Math.max(value, 0);
+            buckets[64 - Long.numberOfLeadingZeros(value)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getMax() {
+            return max;
+        }
+
+        public synchronized double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns an upper bound on the given percentile of the recorded values.
+         * @param p the percentile, from 0 to 100
+         * @return the upper end of the bucket holding the p-th percentile, at most the maximum value
+         */
+        public synchronized long percentile(double p) {
+            long rank = (long) Math.ceil(p / 100 * count);
+            long seen = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b];
+                if (seen >= rank && seen > 0) {
+                    return b == 0 ? 0 : Math.min(max, (1L << b) - 1);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns the counts of each bucket.
+         * @return a copy of the bucket counts
+         */
+        public synchronized long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("mean %.1f, p50 <= %d, p99 <= %d, max %d", getMean(), percentile(50), percentile(99), max);
+        }
+    }
+}
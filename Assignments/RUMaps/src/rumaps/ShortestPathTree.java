@@ -0,0 +1,257 @@
+package rumaps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * The ShortestPathTree class holds the least-traffic paths from one source intersection
+ * to every intersection of a CompactGraph, computed with a full run of Dijkstra's algorithm.
+ *
+ * Once built, the path to any destination is read off the tree in time proportional
+ * to its length. It contains the following attributes, all by intersection index:
+ * - dist[v] - least traffic from the source to v (Double.POSITIVE_INFINITY if unreachable)
+ * - pred[v] - index of the intersection before v on that path (-1 for the source and unreachable vertices)
+ * - predEdge[v] - CSR edge id of the block from pred[v] to v (-1 if there is none)
+ *
+ * When the traffic of one edge changes in the graph, repair(e) brings the tree up to
+ * date by re-settling only the intersections whose least traffic is affected:
+ * - a decrease that shortens the path to the edge's target is propagated outward
+ *   from it, as in Dijkstra's algorithm started from that target
+ * - an increase on a tree edge invalidates the subtree below it, whose intersections
+ *   are then settled again starting from their neighbours outside the subtree
+ * - any other change leaves the tree as it is
+ */
+public class ShortestPathTree {
+    private final CompactGraph graph;
+    private final int source;
+    private final double[] dist;
+    private final int[] pred;
+    private final int[] predEdge;
+
+    // Cost of the search that built the tree
+    private int settledCount;
+    private int relaxedCount;
+    private long heapOperations;
+
+    /**
+     * Computes the shortest path tree of a graph from a source.
+     * @param graph the graph to search
+     * @param source the index of the source intersection
+     */
+    public ShortestPathTree(CompactGraph graph, int source) {
+        this.graph = graph;
+        this.source = source;
+        int n = graph.vertexCount();
+        dist = new double[n];
+        pred = new int[n];
+        predEdge = new int[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(pred, -1);
+        Arrays.fill(predEdge, -1);
+
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        IndexMinPQ fringe = new IndexMinPQ(n);
+        dist[source] = 0;
+        fringe.insert(source, 0);
+        while (!fringe.isEmpty()) {
+            int u = fringe.delMin();
+            settledCount++;
+            relaxedCount += offsets[u + 1] - offsets[u];
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                double newDist = dist[u] + traffic[e];
+                if (newDist < dist[v]) {
+                    dist[v] = newDist;
+                    pred[v] = u;
+                    predEdge[v] = e;
+                    fringe.insertOrDecrease(v, newDist);
+                }
+            }
+        }
+        heapOperations = fringe.getOperationCount();
+    }
+
+    /**
+     * Updates the tree after the traffic of an edge of its graph has changed.
+     * Afterwards every distance is the same as in a tree built from scratch,
+     * though among paths with equal traffic a different one may be kept.
+     * 
+     * @param e the id of the edge whose traffic changed
+     * @return the number of intersections that were settled again
+     */
+    public int repair(int e) {
+        int[] sources = graph.getSources();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        int u = sources[e];
+        int v = targets[e];
+        double newDist = dist[u] + traffic[e];
+
+        if (newDist < dist[v]) {
+            dist[v] = newDist;
+            pred[v] = u;
+            predEdge[v] = e;
+            IndexMinPQ fringe = new IndexMinPQ(dist.length);
+            fringe.insert(v, newDist);
+            return settle(fringe, null);
+        }
+        if (predEdge[v] != e || newDist == dist[v]) {
+            return 0;
+        }
+
+        // The traffic of a tree edge went up: collect the subtree hanging from it
+        int[] offsets = graph.getOffsets();
+        boolean[] affected = new boolean[dist.length];
+        int[] subtree = new int[dist.length];
+        int size = 0;
+        subtree[size++] = v;
+        affected[v] = true;
+        for (int i = 0; i < size; i++) {
+            int x = subtree[i];
+            for (int f = offsets[x]; f < offsets[x + 1]; f++) {
+                int y = targets[f];
+                if (predEdge[y] == f) {
+                    affected[y] = true;
+                    subtree[size++] = y;
+                }
+            }
+        }
+
+        // Start each subtree vertex from its best neighbour outside the subtree
+        int[] reverseOffsets = graph.getReverseOffsets();
+        int[] reverseEdges = graph.getReverseEdges();
+        IndexMinPQ fringe = new IndexMinPQ(dist.length);
+        for (int i = 0; i < size; i++) {
+            int x = subtree[i];
+            dist[x] = Double.POSITIVE_INFINITY;
+            pred[x] = -1;
+            predEdge[x] = -1;
+            for (int k = reverseOffsets[x]; k < reverseOffsets[x + 1]; k++) {
+                int f = reverseEdges[k];
+                int y = sources[f];
+                if (!affected[y] && dist[y] + traffic[f] < dist[x]) {
+                    dist[x] = dist[y] + traffic[f];
+                    pred[x] = y;
+                    predEdge[x] = f;
+                }
+            }
+            if (dist[x] != Double.POSITIVE_INFINITY) {
+                fringe.insert(x, dist[x]);
+            }
+        }
+        return settle(fringe, affected);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from the intersections on the fringe, lowering the
+     * distances of their successors (only those marked in limit, if it is not null).
+     * @return the number of intersections removed from the fringe
+     */
+    private int settle(IndexMinPQ fringe, boolean[] limit) {
+        int[] offsets = graph.getOffsets();
+        int[] targets = graph.getTargets();
+        double[] traffic = graph.getTraffic();
+        int settled = 0;
+        while (!fringe.isEmpty()) {
+            int u = fringe.delMin();
+            settled++;
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                if (limit != null && !limit[v]) continue;
+                double newDist = dist[u] + traffic[e];
+                if (newDist < dist[v]) {
+                    dist[v] = newDist;
+                    pred[v] = u;
+                    predEdge[v] = e;
+                    fringe.insertOrDecrease(v, newDist);
+                }
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * Returns the number of intersections settled by the search that built the tree.
+     * @return the number of intersections settled
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    /**
+     * Returns the number of blocks examined by the search that built the tree.
+     * @return the number of blocks examined
+     */
+    public int getRelaxedCount() {
+        return relaxedCount;
+    }
+
+    /**
+     * Returns the number of priority queue operations of the search that built the tree.
+     * @return the number of heap operations
+     */
+    public long getHeapOperations() {
+        return heapOperations;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    public boolean hasPathTo(int v) {
+        return dist[v] != Double.POSITIVE_INFINITY;
+    }
+
+    public double distTo(int v) {
+        return dist[v];
+    }
+
+    /**
+     * Returns the least-traffic path from the source to a destination.
+     * @param v the index of the destination intersection
+     * @return the path from the source to v, or an empty list if v is unreachable
+     */
+    public ArrayList<Intersection> pathTo(int v) {
+        ArrayList<Intersection> path = new ArrayList<>();
+        if (!hasPathTo(v)) {
+            return path;
+        }
+        Intersection[] vertices = graph.getVertices();
+        for (int x = v; x != -1; x = pred[x]) {
+            path.add(vertices[x]);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Returns the path from the root to a vertex as the edges it takes.
+     * @param v the index of the destination intersection
+     * @return the path, empty if v is unreachable
+     */
+    public EdgePath edgePathTo(int v) {
+        if (!hasPathTo(v)) {
+            return EdgePath.empty(graph);
+        }
+        return EdgePath.trace(graph, predEdge, v);
+    }
+
+    public double[] getDist() {
+        return dist;
+    }
+
+    public int[] getPred() {
+        return pred;
+    }
+
+    public int[] getPredEdge() {
+        return predEdge;
+    }
+}
@@ -0,0 +1,81 @@
+package rumaps;
+
+import java.util.Arrays;
+
+/**
+ * The SpatialGrid class is a uniform grid index over rectangles on the map, used by
+ * MapPanel to find the blocks near the mouse without checking all of them.
+ *
+ * Each item is identified by an int id and stored in every cell its bounding box overlaps.
+ * Items and queries outside the grid's area are clamped to the border cells, so nothing
+ * is ever missed; the grid only narrows down which items need an exact test.
+ */
+public class SpatialGrid {
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[][] cells;
+    private final int[] cellSizes;
+
+    /**
+     * Creates an empty grid covering the area from (0, 0) to (width, height).
+     * @param width the width of the area
+     * @param height the height of the area
+     * @param cellSize the width and height of each cell
+     */
+    public SpatialGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        cells = new int[columns * rows][];
+        cellSizes = new int[columns * rows];
+    }
+
+    /**
+     * Adds an item to every cell its bounding box overlaps. Items should be added
+     * in increasing id order, so that each cell lists its ids in increasing order.
+     * @param id the item's id
+     * @param minX the left edge of the item's bounding box
+     * @param minY the top edge of the item's bounding box
+     * @param maxX the right edge of the item's bounding box
+     * @param maxY the bottom edge of the item's bounding box
+     */
+    public void insert(int id, double minX, double minY, double maxX, double maxY) {
+        int firstColumn = column(minX), lastColumn = column(maxX);
+        int firstRow = row(minY), lastRow = row(maxY);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                int cell = r * columns + c;
+                if (cells[cell] == null) {
+                    cells[cell] = new int[4];
+                } else if (cellSizes[cell] == cells[cell].length) {
+                    cells[cell] = Arrays.copyOf(cells[cell], 2 * cellSizes[cell]);
+                }
+                cells[cell][cellSizes[cell]++] = id;
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the items whose bounding boxes may contain a point,
+     * in the order they were inserted.
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return the candidate ids
+     */
+    public int[] candidates(double x, double y) {
+        int cell = row(y) * columns + column(x);
+        if (cells[cell] == null) {
+            return new int[0];
+        }
+        return Arrays.copyOf(cells[cell], cellSizes[cell]);
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+    }
+}
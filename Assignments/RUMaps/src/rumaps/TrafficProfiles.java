@@ -0,0 +1,169 @@
+package rumaps;
+
+import java.util.Arrays;
+
+/**
+ * The TrafficProfiles class holds a traffic factor for every block of a network at every
+ * time of day, for time-dependent routing with RUMaps.fastestPathAt.
+ *
+ * A day is split into equal time slices (for example 96 quarter-hours), and each block has
+ * one traffic factor per slice. All factors are kept in one flat float array indexed by CSR
+ * edge id and slice, factors[e * slices + s], so the memory used is one float per block and
+ * slice, however many profiles the network holds.
+ *
+ * Time is measured in the same units as traffic: a block of length L with a constant traffic
+ * factor f takes L * f to traverse. When the factor changes partway along a block, the rest of
+ * the block is traversed at the new rate, so leaving later never means arriving earlier (the
+ * FIFO property), which is what makes Dijkstra's algorithm on arrival times exact.
+ * Times past the end of the day wrap around to the next day; each time is reduced to its
+ * time of day before slices are looked up, so even very late times take as long as early ones.
+ */
+public class TrafficProfiles {
+    private final int edgeCount;
+    private final int slices;
+    private final double sliceLength;
+    private final float[] factors;
+
+    /**
+     * Creates profiles for every edge of a graph, each holding the edge's current traffic
+     * factor at every time of day.
+     *
+     * @param graph the graph whose edges the profiles are for
+     * @param slices the number of time slices in a day
+     * @param sliceLength the length of each time slice, in the same units as traffic
+     */
+    public TrafficProfiles(CompactGraph graph, int slices, double sliceLength) {
+        if (slices < 1) throw new IllegalArgumentException("there must be at least one time slice");
+        if (!(sliceLength > 0) || sliceLength == Double.POSITIVE_INFINITY) {
+            throw new IllegalArgumentException("time slices must have a positive, finite length");
+        }
+        this.edgeCount = graph.edgeCount();
+        this.slices = slices;
+        this.sliceLength = sliceLength;
+        factors = new float[edgeCount * slices];
+        double[] trafficFactors = graph.getTrafficFactors();
+        for (int e = 0; e < edgeCount; e++) {
+            Arrays.fill(factors, e * slices, (e + 1) * slices, (float) trafficFactors[e]);
+        }
+    }
+
+    /**
+     * Draws a new traffic factor for every edge and slice the same way RUMaps.blockTrafficFactor
+     * draws one per block, using StdRandom so results depend on its seed.
+     */
+    public void randomize() {
+        for (int i = 0; i < factors.length; i++) {
+            double rand = StdRandom.gaussian(1, 0.2);
+            rand = Math.max(rand, 0.5);
+            rand = Math.min(rand, 1.5);
+            factors[i] = (float) rand;
+        }
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getSlices() {
+        return slices;
+    }
+
+    public double getSliceLength() {
+        return sliceLength;
+    }
+
+    /**
+     * Returns the time slice a time falls in.
+     * @param time a finite time, which may be past the end of the day
+     * @return the slice, from 0 to getSlices() - 1
+     */
+    public int sliceAt(double time) {
+        return Math.min((int) (timeOfDay(time) / sliceLength), slices - 1);
+    }
+
+    /**
+     * Returns how far into its day a time is.
+     * @param time a finite time
+     * @return the time of day, at least 0 and less than slices * sliceLength
+     * @throws IllegalArgumentException if the time is NaN or infinite
+     */
+    private double timeOfDay(double time) {
+        if (!Double.isFinite(time)) {
+            throw new IllegalArgumentException("time must be finite");
+        }
+        double day = slices * sliceLength;
+        double timeOfDay = time % day;
+        if (timeOfDay < 0) {
+            timeOfDay += day;
+        }
+        // A tiny negative remainder plus a day can round up to a whole day
+        return timeOfDay < day ? timeOfDay : 0;
+    }
+
+    /**
+     * Returns the traffic factor of an edge during a time slice.
+     * @param e the edge id
+     * @param slice the time slice
+     * @return the traffic factor
+     */
+    public double getTrafficFactor(int e, int slice) {
+        return factors[e * slices + slice];
+    }
+
+    /**
+     * Changes the traffic factor of an edge during a time slice.
+     * @param e the edge id
+     * @param slice the time slice
+     * @param trafficFactor the new traffic factor
+     */
+    public void setTrafficFactor(int e, int slice, double trafficFactor) {
+        if (!(trafficFactor >= 0)) throw new IllegalArgumentException("traffic factor must be non-negative");
+        factors[e * slices + slice] = (float) trafficFactor;
+    }
+
+    /**
+     * Returns when a block is left if it is entered at the given time. Takes time
+     * proportional to the number of slice boundaries crossed on the block.
+     * @param graph the graph the profiles are for
+     * @param e the edge id of the block
+     * @param time the time the block is entered
+     * @return the time the end of the block is reached
+     * @throws IllegalArgumentException if the time is NaN or infinite
+     */
+    public double arrivalTime(CompactGraph graph, int e, double time) {
+        // Walk the slices from the time of day, so the slice numbers stay small however
+        // late the time is, and add the start of the day back at the end
+        double dayStart = time - timeOfDay(time);
+        time -= dayStart;
+        double remaining = graph.getLengths()[e];
+        long period = (long) Math.floor(time / sliceLength);
+        int slice = (int) Math.floorMod(period, (long) slices);
+        int base = e * slices;
+        // Traverse the block slice by slice until the rest of it fits in the current slice
+        while (true) {
+            double factor = factors[base + slice];
+            double sliceEnd = (period + 1) * sliceLength;
+            if (factor == 0 || remaining * factor <= sliceEnd - time) {
+                return dayStart + (time + remaining * factor);
+            }
+            remaining -= (sliceEnd - time) / factor;
+            time = sliceEnd;
+            period++;
+            slice = slice + 1 == slices ? 0 : slice + 1;
+        }
+    }
+
+    /**
+     * Returns when a path is finished if it is started at the given time.
+     * @param path the path, found on the graph the profiles are for
+     * @param departure the time the path is started
+     * @return the time the end of the path is reached
+     */
+    public double arrivalTime(EdgePath path, double departure) {
+        double time = departure;
+        for (int e : path.getEdges()) {
+            time = arrivalTime(path.getGraph(), e, time);
+        }
+        return time;
+    }
+}
@@ -0,0 +1,204 @@
+package test;
+
+import rumaps.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Benchmarks for map loading and the RUMaps routing methods. Not a JUnit test: run it with
+ *
+ *     java -cp bin:lib/junit.jar:lib/hamcrest.jar test.RUMapsBenchmark [filter]
+ *
+ * from the RUMaps directory, optionally with a filter that benchmark names must contain.
+ *
+ * Each benchmark is warmed up, then timed over several fixed-length iterations, and reported
+ * as the mean time per operation with the spread across iterations. The maps are Busch.in,
+ * AllCampuses.in, and square grids generated from a fixed seed; traffic factors and the
+ * intersection pairs queried are seeded too, so runs on the same machine can be compared.
+ */
+public class RUMapsBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 200_000_000L;
+    private static final int PAIRS = 1024;
+    private static final int[] GRID_SIZES = {32, 64, 128};
+
+    // Results are accumulated here so the JIT cannot discard the work being measured
+    private static long sink;
+
+    private interface Operation {
+        /**
+         * Runs the i-th operation and returns something derived from its result.
+         */
+        long run(int i);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String filter = args.length > 0 ? args[0] : "";
+        // Serve with TCP_NODELAY, as RouteServer.main does
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        ArrayList<String> maps = new ArrayList<>();
+        ArrayList<String> names = new ArrayList<>();
+        maps.add("Busch.in");
+        names.add("Busch.in");
+        maps.add("AllCampuses.in");
+        names.add("AllCampuses.in");
+        for (int k : GRID_SIZES) {
+            maps.add(writeGrid(k));
+            names.add("grid" + k + "x" + k);
+        }
+
+        System.out.printf("%-52s %5s %14s %12s%n", "Benchmark", "Cnt", "Score", "Error");
+        for (int m = 0; m < maps.size(); m++) {
+            String map = maps.get(m);
+            String name = names.get(m);
+            StdRandom.setSeed(2024);
+            RUMaps rumaps = MapLoader.load(null, map);
+            Network network = rumaps.getRutgers();
+            Intersection[] intersections = network.getIntersections();
+            int n = network.getNextIndex();
+
+            Random random = new Random(42);
+            Intersection[] starts = new Intersection[PAIRS];
+            Intersection[] ends = new Intersection[PAIRS];
+            for (int i = 0; i < PAIRS; i++) {
+                starts[i] = intersections[random.nextInt(n)];
+                ends[i] = intersections[random.nextInt(n)];
+            }
+            ArrayList<ArrayList<Intersection>> paths = new ArrayList<>();
+            ArrayList<EdgePath> edgePaths = new ArrayList<>();
+            for (int i = 0; i < PAIRS; i++) {
+                paths.add(rumaps.fastestPath(starts[i], ends[i]));
+                edgePaths.add(rumaps.fastestEdgePath(starts[i], ends[i]));
+            }
+
+            benchmark(filter, "construct.StdIn", name, i -> new RUMaps(map).getRutgers().getNextIndex());
+            benchmark(filter, "construct.MapLoader", name, i -> MapLoader.load(null, map).getRutgers().getNextIndex());
+            benchmark(filter, "reachableIntersections", name, i -> rumaps.reachableIntersections(starts[i % PAIRS]).size());
+            benchmark(filter, "minimizeIntersections", name, i -> rumaps.minimizeIntersections(starts[i % PAIRS], ends[i % PAIRS]).size());
+            benchmark(filter, "fastestPath", name, i -> rumaps.fastestPath(starts[i % PAIRS], ends[i % PAIRS]).size());
+            benchmark(filter, "pathInformation", name, i -> (long) rumaps.pathInformation(paths.get(i % PAIRS))[2]);
+            benchmark(filter, "pathInformation.edges", name, i -> (long) rumaps.pathInformation(edgePaths.get(i % PAIRS))[2]);
+
+            if (("server.route:" + name).contains(filter)) {
+                RouteServer server = new RouteServer(rumaps, 0);
+                server.start();
+                String base = "http://localhost:" + server.getPort() + "/route?from=";
+                benchmark(filter, "server.route", name, i -> {
+                    Coordinate from = starts[i % PAIRS].getCoordinate();
+                    Coordinate to = ends[i % PAIRS].getCoordinate();
+                    return get(base + from.getX() + "," + from.getY() + "&to=" + to.getX() + "," + to.getY());
+                });
+                server.stop();
+            }
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    /**
+     * Sends a GET request and returns the length of the response.
+     */
+    private static long get(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            try (InputStream in = connection.getInputStream()) {
+                return in.readAllBytes().length;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Times an operation and prints its mean time per call, in microseconds, with
+     * the half-width of a 99.9% confidence interval across the measured iterations.
+     */
+    private static void benchmark(String filter, String method, String map, Operation operation) {
+        String name = method + ":" + map;
+        if (!name.contains(filter)) {
+            return;
+        }
+        double[] scores = new double[MEASURED_ITERATIONS];
+        int op = 0;
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++) {
+            long count = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                sink += operation.run(op++);
+                count++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < ITERATION_NANOS);
+            if (iteration >= WARMUP_ITERATIONS) {
+                scores[iteration - WARMUP_ITERATIONS] = elapsed / 1000.0 / count;
+            }
+        }
+
+        double mean = 0;
+        for (double score : scores) mean += score;
+        mean /= scores.length;
+        double variance = 0;
+        for (double score : scores) variance += (score - mean) * (score - mean);
+        double stddev = Math.sqrt(variance / (scores.length - 1));
+        // Student's t quantile for 4 degrees of freedom at 99.9% (two-sided)
+        double error = 8.610 * stddev / Math.sqrt(scores.length);
+        System.out.printf("%-52s %5d %14.3f +- %9.3f  us/op%n", name, scores.length, mean, error);
+    }
+
+    /**
+     * Writes a k by k grid map to a temporary file: one street per row and per column,
+     * with about one block in ten missing and some row blocks bent through a middle point.
+     * @return the name of the file
+     */
+    private static String writeGrid(int k) throws IOException {
+        Random random = new Random(k);
+        ArrayList<String> streets = new ArrayList<>();
+        for (int r = 0; r < k; r++) {
+            StringBuilder blocks = new StringBuilder();
+            int count = 0;
+            for (int c = 0; c < k - 1; c++) {
+                if (random.nextDouble() < 0.1) continue;
+                count++;
+                if (random.nextDouble() < 0.3) {
+                    blocks.append(count).append("\n3\n2.5\n").append(c * 10).append(' ').append(r * 10).append('\n')
+                          .append(c * 10 + 5).append(' ').append(r * 10 + random.nextInt(7) - 3).append('\n')
+                          .append((c + 1) * 10).append(' ').append(r * 10).append('\n');
+                } else {
+                    blocks.append(count).append("\n2\n2.5\n").append(c * 10).append(' ').append(r * 10).append('\n')
+                          .append((c + 1) * 10).append(' ').append(r * 10).append('\n');
+                }
+            }
+            if (count > 0) streets.add("Row " + r + "\n" + count + "\n" + blocks);
+        }
+        for (int c = 0; c < k; c++) {
+            StringBuilder blocks = new StringBuilder();
+            int count = 0;
+            for (int r = 0; r < k - 1; r++) {
+                if (random.nextDouble() < 0.1) continue;
+                count++;
+                blocks.append(count).append("\n2\n2.5\n").append(c * 10).append(' ').append(r * 10).append('\n')
+                      .append(c * 10).append(' ').append((r + 1) * 10).append('\n');
+            }
+            if (count > 0) streets.add("Col " + c + "\n" + count + "\n" + blocks);
+        }
+
+        File file = File.createTempFile("grid" + k + "x" + k + "-", ".in");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.println(k * k + " " + streets.size());
+            for (String street : streets) {
+                out.print(street);
+            }
+        }
+        return file.getPath();
+    }
+}
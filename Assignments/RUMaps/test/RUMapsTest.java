@@ -3,7 +3,20 @@ package test;
 import static org.junit.Assert.*;
 import org.junit.*;
 import rumaps.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This is an optional JUnit test class for the RUMaps class.
@@ -74,4 +87,741 @@ public class RUMapsTest {
         // Add assertions to verify the behavior of pathInformation 
 
     }
+
+    @Test
+    public void testFindIntersection() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        for (int i = 0; i < testNetwork.getNextIndex(); i++) {
+            assertEquals(i, testNetwork.findIntersection(intersections[i].getCoordinate()));
+        }
+        assertEquals(-1, testNetwork.findIntersection(-1, -1));
+    }
+
+    @Test
+    public void testReachableIntersectionsLongChain() throws IOException {
+        // One street of 60000 blocks in a row, deep enough to overflow a recursive DFS
+        int blocks = 60000;
+        StringBuilder map = new StringBuilder();
+        map.append(blocks + 1).append(" 1\nChain\n").append(blocks).append('\n');
+        for (int b = 0; b < blocks; b++) {
+            map.append(b + 1).append("\n2\n2.5\n").append(b).append(" 0\n").append(b + 1).append(" 0\n");
+        }
+        Path file = Files.createTempFile("chain", ".in");
+        file.toFile().deleteOnExit();
+        Files.write(file, map.toString().getBytes(StandardCharsets.US_ASCII));
+        RUMaps testRUMaps = MapLoader.load(null, file.toString());
+        Network testNetwork = testRUMaps.getRutgers();
+
+        ArrayList<Intersection> reachable = testRUMaps.reachableIntersections(testNetwork.getIntersections()[0]);
+        assertEquals(blocks + 1, reachable.size());
+        for (int x = 0; x <= blocks; x++) {
+            assertEquals(x, reachable.get(x).getCoordinate().getX());
+        }
+    }
+
+    @Test
+    public void testAstarPath() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double[] fastest = testRUMaps.pathInformation(testRUMaps.fastestPath(intersections[i], intersections[j]));
+                int dijkstraSettled = testRUMaps.getSettledCount();
+                double[] astar = testRUMaps.pathInformation(testRUMaps.astarPath(intersections[i], intersections[j]));
+                assertEquals(fastest[2], astar[2], 1e-9);
+                assertTrue(testRUMaps.getSettledCount() <= dijkstraSettled);
+            }
+        }
+    }
+
+    @Test
+    public void testBidirectionalSearch() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                ArrayList<Intersection> bfs = testRUMaps.minimizeIntersections(intersections[i], intersections[j]);
+                ArrayList<Intersection> bidirectionalBfs = testRUMaps.minimizeIntersectionsBidirectional(intersections[i], intersections[j]);
+                assertEquals(bfs.size(), bidirectionalBfs.size());
+
+                double[] fastest = testRUMaps.pathInformation(testRUMaps.fastestPath(intersections[i], intersections[j]));
+                ArrayList<Intersection> bidirectional = testRUMaps.fastestPathBidirectional(intersections[i], intersections[j]);
+                assertEquals(fastest[2], testRUMaps.pathInformation(bidirectional)[2], 1e-9);
+                if (!bidirectional.isEmpty()) {
+                    assertEquals(intersections[i], bidirectional.get(0));
+                    assertEquals(intersections[j], bidirectional.get(bidirectional.size() - 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHierarchyPath() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        testRUMaps.prepareContractionHierarchy();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                ArrayList<Intersection> fastest = testRUMaps.fastestPath(intersections[i], intersections[j]);
+                ArrayList<Intersection> hierarchy = testRUMaps.hierarchyPath(intersections[i], intersections[j]);
+                assertEquals(fastest.isEmpty(), hierarchy.isEmpty());
+                assertEquals(testRUMaps.pathInformation(fastest)[2], testRUMaps.pathInformation(hierarchy)[2], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testCachedRoute() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        testRUMaps.setRouteCacheCapacity(2);
+        Route fast = testRUMaps.cachedRoute(intersections[0], intersections[10], Route.Type.FASTEST_PATH);
+        assertEquals(testRUMaps.fastestPath(intersections[0], intersections[10]), fast.getPath());
+        assertArrayEquals(testRUMaps.pathInformation(fast.getPath()), fast.getInformation(), 1e-9);
+        assertSame(fast, testRUMaps.cachedRoute(intersections[0], intersections[10], Route.Type.FASTEST_PATH));
+
+        Route min = testRUMaps.cachedRoute(intersections[0], intersections[10], Route.Type.MINIMIZE_INTERSECTIONS);
+        assertEquals(testRUMaps.minimizeIntersections(intersections[0], intersections[10]), min.getPath());
+        testRUMaps.cachedRoute(intersections[1], intersections[10], Route.Type.FASTEST_PATH);
+        assertEquals(2, testRUMaps.getRouteCache().size());
+        assertNotSame(fast, testRUMaps.cachedRoute(intersections[0], intersections[10], Route.Type.FASTEST_PATH));
+
+        testNetwork.trafficChanged();
+        assertNotSame(min, testRUMaps.cachedRoute(intersections[0], intersections[10], Route.Type.MINIMIZE_INTERSECTIONS));
+        assertEquals(1, testRUMaps.getRouteCache().size());
+    }
+
+    @Test
+    public void testShortestPathTree() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        for (int i = 0; i < n; i++) {
+            ShortestPathTree tree = testRUMaps.shortestPathTree(intersections[i]);
+            for (int j = 0; j < n; j++) {
+                assertEquals(testRUMaps.fastestPath(intersections[i], intersections[j]), testRUMaps.treePath(intersections[i], intersections[j]));
+            }
+            assertSame(tree, testRUMaps.shortestPathTree(intersections[i]));
+        }
+    }
+
+    @Test
+    public void testMapLoader() throws IOException {
+        StdRandom.setSeed(2024);
+        Network expected = new RUMaps(TEST_FILE).getRutgers();
+        StdRandom.setSeed(2024);
+        Network loaded = MapLoader.load(null, TEST_FILE).getRutgers();
+
+        assertEquals(expected.getNextIndex(), loaded.getNextIndex());
+        assertArrayEquals(expected.getIntersections(), loaded.getIntersections());
+        for (int i = 0; i < expected.getNextIndex(); i++) {
+            Block expectedBlock = expected.adj(i);
+            Block loadedBlock = loaded.adj(i);
+            while (expectedBlock != null) {
+                assertEquals(expectedBlock, loadedBlock);
+                assertEquals(expectedBlock.getLastEndpoint(), loadedBlock.getLastEndpoint());
+                expectedBlock = expectedBlock.getNext();
+                loadedBlock = loadedBlock.getNext();
+            }
+            assertNull(loadedBlock);
+        }
+
+        // A number too long for the tokenizer is an error, not silently cut short
+        Path file = Files.createTempFile("rumaps", ".in");
+        file.toFile().deleteOnExit();
+        String roadSize = "2." + "0".repeat(70) + "1";
+        Files.write(file, ("2 1\nStreet\n1\n1\n2\n" + roadSize + "\n0 0\n10 0\n").getBytes(StandardCharsets.US_ASCII));
+        try {
+            MapLoader.load(null, file.toString());
+            fail("loaded a road size longer than 64 characters");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Number longer than 64 characters"));
+        }
+        // Integers that overflow, or a file that ends in the middle of one, are errors too
+        Files.write(file, ("2 1\nStreet\n1\n1\n2\n2.5\n0 0\n10 4294967296\n").getBytes(StandardCharsets.US_ASCII));
+        try {
+            MapLoader.load(null, file.toString());
+            fail("loaded a coordinate that overflows an int");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Integer out of range"));
+        }
+        for (String truncated : new String[]{"2 1\nStreet\n1\n1\n2\n2.5\n0 0\n10 ", "2 1\nStreet\n1\n1\n2\n2.5\n0 0\n10 -"}) {
+            Files.write(file, truncated.getBytes(StandardCharsets.US_ASCII));
+            try {
+                MapLoader.load(null, file.toString());
+                fail("loaded a truncated map file");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+        Files.write(file, ("2 1\nStreet\n1\n1\n2\n2.5\n-2147483648 0\n2147483647 0\n").getBytes(StandardCharsets.US_ASCII));
+        assertEquals(2, MapLoader.load(null, file.toString()).getRutgers().getNextIndex());
+        Files.write(file, ("2 1\nStreet\n1\n1\n2\n2.5\n0 0\n10 0\n").getBytes(StandardCharsets.US_ASCII));
+        assertEquals(2, MapLoader.load(null, file.toString()).getRutgers().getNextIndex());
+    }
+
+    @Test
+    public void testUpdateTrafficFactor() {
+        StdRandom.setSeed(2024);
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+        CompactGraph graph = testNetwork.getCompactGraph();
+        Intersection source = testNetwork.getIntersections()[0];
+        ShortestPathTree tree = testRUMaps.shortestPathTree(source);
+
+        for (int k = 0; k < 200; k++) {
+            Block block = graph.getBlocks()[StdRandom.uniformInt(graph.edgeCount())];
+            testRUMaps.updateTrafficFactor(block, StdRandom.uniformDouble(0.5, 1.5));
+            assertEquals(block.getTrafficFactor() * block.getLength(), block.getTraffic(), 0);
+            assertSame(tree, testRUMaps.shortestPathTree(source));
+
+            ShortestPathTree rebuilt = new ShortestPathTree(graph, 0);
+            assertArrayEquals(rebuilt.getDist(), tree.getDist(), 1e-9);
+            for (int v = 1; v < graph.vertexCount(); v++) {
+                int e = tree.getPredEdge()[v];
+                if (e != -1) {
+                    assertEquals(tree.distTo(v), tree.distTo(tree.getPred()[v]) + graph.getTraffic()[e], 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBatchRoutes() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        ArrayList<Intersection> starts = new ArrayList<>();
+        ArrayList<Intersection> ends = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (int j = n - 1; j >= 0; j--) {
+                starts.add(intersections[i]);
+                ends.add(intersections[j]);
+            }
+        }
+
+        ArrayList<Route> fastest = testRUMaps.batchRoutes(starts, ends, Route.Type.FASTEST_PATH);
+        ArrayList<Route> fewest = testRUMaps.batchRoutes(starts, ends, Route.Type.MINIMIZE_INTERSECTIONS);
+        assertEquals(starts.size(), fastest.size());
+        for (int k = 0; k < starts.size(); k++) {
+            ArrayList<Intersection> path = testRUMaps.fastestPath(starts.get(k), ends.get(k));
+            assertEquals(path, fastest.get(k).getPath());
+            assertArrayEquals(testRUMaps.pathInformation(path), fastest.get(k).getInformation(), 0);
+
+            path = testRUMaps.minimizeIntersections(starts.get(k), ends.get(k));
+            assertEquals(path, fewest.get(k).getPath());
+            assertArrayEquals(testRUMaps.pathInformation(path), fewest.get(k).getInformation(), 0);
+        }
+    }
+
+    @Test
+    public void testIsConnected() throws IOException {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        for (int i = 0; i < n; i++) {
+            ArrayList<Intersection> reachable = testRUMaps.reachableIntersections(intersections[i]);
+            for (int j = 0; j < n; j++) {
+                assertEquals(reachable.contains(intersections[j]), testRUMaps.isConnected(intersections[i], intersections[j]));
+            }
+        }
+
+        // Two streets that never meet: no search may run between them
+        Path file = Files.createTempFile("islands", ".in");
+        file.toFile().deleteOnExit();
+        String map = "4 2\nWest\n1\n1\n2\n2.5\n0 0\n10 0\nEast\n1\n1\n2\n2.5\n100 100\n110 100\n";
+        Files.write(file, map.getBytes(StandardCharsets.US_ASCII));
+        RUMaps islands = MapLoader.load(null, file.toString());
+        Intersection[] ends = islands.getRutgers().getIntersections();
+        assertEquals(4, islands.getRutgers().getNextIndex());
+        Intersection west = null;
+        Intersection westEnd = null;
+        Intersection east = null;
+        for (int i = 0; i < 4; i++) {
+            if (ends[i].getCoordinate().getX() == 0) west = ends[i];
+            if (ends[i].getCoordinate().getX() == 10) westEnd = ends[i];
+            if (ends[i].getCoordinate().getX() == 100) east = ends[i];
+        }
+        assertTrue(islands.isConnected(west, westEnd));
+        assertFalse(islands.isConnected(west, east));
+        assertFalse(islands.isConnected(east, west));
+
+        islands.prepareTrafficProfiles(4, 10);
+        islands.enableMetrics();
+        SearchMetrics metrics = islands.getMetrics();
+        assertTrue(islands.minimizeIntersections(west, east).isEmpty());
+        assertTrue(islands.minimizeIntersectionsBidirectional(west, east).isEmpty());
+        assertTrue(islands.fastestPath(west, east).isEmpty());
+        assertTrue(islands.fastestEdgePathAt(west, east, 5).isEmpty());
+        assertTrue(islands.fastestPathBidirectional(west, east).isEmpty());
+        assertTrue(islands.astarPath(west, east).isEmpty());
+        assertTrue(islands.landmarkPath(west, east).isEmpty());
+        assertTrue(islands.alternativeRoutes(west, east, 3).isEmpty());
+        assertNull(metrics.getLast());
+        assertEquals(0, islands.getSettledCount());
+
+        assertEquals(2, islands.fastestPath(west, westEnd).size());
+        assertEquals("fastestPath", metrics.getLast().getMethod());
+    }
+
+    @Test
+    public void testIsochrone() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        ShortestPathTree tree = testRUMaps.shortestPathTree(intersections[0]);
+        for (double budget : new double[] {0, 50, 200, 1000, Double.POSITIVE_INFINITY}) {
+            Isochrone isochrone = testRUMaps.isochrone(intersections[0], budget);
+            ArrayList<Intersection> reached = isochrone.getIntersections();
+            double[] traffic = isochrone.getTraffic();
+            int expected = 0;
+            for (int v = 0; v < n; v++) {
+                if (tree.distTo(v) <= budget) {
+                    expected++;
+                    int k = reached.indexOf(intersections[v]);
+                    assertTrue(k >= 0);
+                    assertEquals(tree.distTo(v), traffic[k], 0);
+                }
+            }
+            assertEquals(expected, reached.size());
+
+            for (Block block : isochrone.getBlocks()) {
+                int u = testNetwork.findIntersection(block.getFirstEndpoint().getCoordinate());
+                assertTrue(tree.distTo(u) + block.getTraffic() <= budget);
+            }
+            for (Block block : isochrone.getBoundaryBlocks()) {
+                int u = testNetwork.findIntersection(block.getFirstEndpoint().getCoordinate());
+                assertTrue(tree.distTo(u) <= budget && tree.distTo(u) + block.getTraffic() > budget);
+            }
+        }
+    }
+
+    @Test
+    public void testAlternativeRoutes() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                ArrayList<Route> routes = testRUMaps.alternativeRoutes(intersections[i], intersections[j], 5);
+                double[] fastest = testRUMaps.pathInformation(testRUMaps.fastestPath(intersections[i], intersections[j]));
+                assertFalse(routes.isEmpty());
+                assertEquals(fastest[2], routes.get(0).getInformation()[2], 1e-9);
+
+                HashSet<ArrayList<Intersection>> distinct = new HashSet<>();
+                for (int k = 0; k < routes.size(); k++) {
+                    ArrayList<Intersection> path = routes.get(k).getPath();
+                    assertEquals(intersections[i], path.get(0));
+                    assertEquals(intersections[j], path.get(path.size() - 1));
+                    assertEquals(path.size(), new HashSet<>(path).size());
+                    assertTrue(distinct.add(path));
+                    if (k > 0) {
+                        assertTrue(routes.get(k - 1).getInformation()[2] <= routes.get(k).getInformation()[2] + 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMapSnapshot() throws IOException {
+        RUMaps expectedRUMaps = new RUMaps(TEST_FILE);
+        Network expected = expectedRUMaps.getRutgers();
+        File file = File.createTempFile("rumaps", ".snapshot");
+        file.deleteOnExit();
+        MapSnapshot.save(expected, file.getPath());
+        RUMaps loadedRUMaps = MapSnapshot.load(null, file.getPath());
+        Network loaded = loadedRUMaps.getRutgers();
+
+        assertEquals(expected.getNextIndex(), loaded.getNextIndex());
+        assertArrayEquals(expected.getIntersections(), loaded.getIntersections());
+        for (int i = 0; i < expected.getNextIndex(); i++) {
+            Block expectedBlock = expected.adj(i);
+            Block loadedBlock = loaded.adj(i);
+            while (expectedBlock != null) {
+                assertEquals(expectedBlock, loadedBlock);
+                assertEquals(expectedBlock.getLastEndpoint(), loadedBlock.getLastEndpoint());
+                expectedBlock = expectedBlock.getNext();
+                loadedBlock = loadedBlock.getNext();
+            }
+            assertNull(loadedBlock);
+        }
+
+        Intersection[] intersections = expected.getIntersections();
+        for (int i = 0; i < expected.getNextIndex(); i++) {
+            for (int j = 0; j < expected.getNextIndex(); j++) {
+                assertEquals(expectedRUMaps.fastestPath(intersections[i], intersections[j]),
+                             loadedRUMaps.fastestPath(intersections[i], intersections[j]));
+            }
+        }
+
+        // Truncated files and impossible counts are rejected before anything is allocated
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        for (int length : new int[]{bytes.length - 1, bytes.length / 2, 40, 32}) {
+            Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+            assertCorruptSnapshot(file.getPath());
+        }
+        for (int field = 2; field < 8; field++) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).putInt(field * Integer.BYTES, field == 2 ? Integer.MAX_VALUE : -1);
+            Files.write(file.toPath(), corrupt);
+            assertCorruptSnapshot(file.getPath());
+        }
+    }
+
+    private static void assertCorruptSnapshot(String filename) {
+        try {
+            MapSnapshot.load(null, filename);
+            fail("loaded a corrupt snapshot");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().endsWith("is truncated or corrupt"));
+        }
+    }
+
+    @Test
+    public void testSearchMetrics() throws InterruptedException {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+        Intersection[] intersections = testNetwork.getIntersections();
+        assertNull(testRUMaps.getMetrics());
+        testRUMaps.fastestPath(intersections[0], intersections[1]);
+        assertNull(testRUMaps.getMetrics());
+
+        testRUMaps.enableMetrics();
+        SearchMetrics metrics = testRUMaps.getMetrics();
+        int n = testNetwork.getNextIndex();
+        int[] expectedSettled = new int[n];
+        for (int i = 0; i < n; i++) {
+            testRUMaps.fastestPath(intersections[i], intersections[n - 1 - i]);
+            SearchMetrics.Sample sample = metrics.takeLast();
+            assertEquals("fastestPath", sample.getMethod());
+            assertEquals(testRUMaps.getSettledCount(), sample.getSettled());
+            expectedSettled[i] = sample.getSettled();
+            assertTrue(sample.getHeapOperations() >= 2 * sample.getSettled());
+            assertNull(metrics.takeLast());
+        }
+        SearchMetrics.MethodStats stats = metrics.getStats("fastestPath");
+        assertEquals(n, stats.getSettled().getCount());
+        assertTrue(stats.getSettled().percentile(50) <= stats.getSettled().percentile(99));
+        assertTrue(stats.getSettled().percentile(99) <= stats.getSettled().getMax());
+
+        testRUMaps.minimizeIntersections(intersections[0], intersections[n - 1]);
+        assertEquals("minimizeIntersections", metrics.getLast().getMethod());
+        assertEquals(0, metrics.getLast().getHeapOperations());
+        assertNull(metrics.getStats("astarPath"));
+
+        // Searches on several threads at once all get recorded, each with the settled count
+        // it would have had on its own: the samples must match the same queries run on one thread
+        metrics.reset();
+        SearchMetrics.Histogram expected = new SearchMetrics.Histogram();
+        Thread[] threads = new Thread[4];
+        int rounds = 50;
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int round = 0; round < rounds; round++) {
+                    for (int i = 0; i < n; i++) {
+                        testRUMaps.fastestEdgePath(intersections[i], intersections[n - 1 - i]);
+                    }
+                }
+            });
+            threads[t].start();
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < n; i++) {
+                    expected.record(expectedSettled[i]);
+                }
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * rounds * n, metrics.getStats("fastestPath").getNanos().getCount());
+        SearchMetrics.Histogram settled = metrics.getStats("fastestPath").getSettled();
+        assertArrayEquals(expected.getBuckets(), settled.getBuckets());
+        assertEquals(expected.getMax(), settled.getMax());
+        assertEquals(expected.getMean(), settled.getMean(), 0);
+    }
+
+    @Test
+    public void testEdgePath() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+        Intersection[] intersections = testNetwork.getIntersections();
+        for (int i = 0; i < testNetwork.getNextIndex(); i++) {
+            // fastestPath and minimizeIntersections are built on these paths, so compare them
+            // with independent searches instead
+            ShortestPathTree tree = new ShortestPathTree(testNetwork.getCompactGraph(), i);
+            for (int j = 0; j < testNetwork.getNextIndex(); j++) {
+                EdgePath fastest = testRUMaps.fastestEdgePath(intersections[i], intersections[j]);
+                ArrayList<Intersection> path = fastest.getIntersections();
+                assertArrayEquals(testRUMaps.pathInformation(path), testRUMaps.pathInformation(fastest), 1e-9);
+                assertEquals(tree.distTo(j), testRUMaps.pathInformation(fastest)[2], 1e-9);
+                ArrayList<Intersection> astar = testRUMaps.astarPath(intersections[i], intersections[j]);
+                assertEquals(testRUMaps.pathInformation(astar)[2], testRUMaps.pathInformation(fastest)[2], 1e-9);
+                ArrayList<Block> blocks = fastest.getBlocks();
+                assertEquals(Math.max(path.size() - 1, 0), blocks.size());
+                for (int k = 0; k < blocks.size(); k++) {
+                    assertEquals(path.get(k), blocks.get(k).getFirstEndpoint());
+                    assertEquals(path.get(k + 1), blocks.get(k).getLastEndpoint());
+                }
+
+                EdgePath fewest = testRUMaps.minimizeIntersectionsEdgePath(intersections[i], intersections[j]);
+                assertEquals(testRUMaps.minimizeIntersectionsBidirectional(intersections[i], intersections[j]).size(),
+                             fewest.getIntersections().size());
+                assertEquals(Math.max(fewest.getIntersections().size() - 1, 0), fewest.getBlocks().size());
+                assertArrayEquals(testRUMaps.pathInformation(fewest.getIntersections()), testRUMaps.pathInformation(fewest), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testLandmarkPath() throws IOException {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+        Intersection[] intersections = testNetwork.getIntersections();
+        File file = File.createTempFile("rumaps", ".landmarks");
+        file.delete();
+        file.deleteOnExit();
+        assertFalse(testRUMaps.prepareLandmarks(4, file.getPath()));
+        assertTrue(testRUMaps.prepareLandmarks(4, file.getPath()));
+
+        int landmarkSettled = 0, astarSettled = 0;
+        for (int i = 0; i < testNetwork.getNextIndex(); i++) {
+            for (int j = 0; j < testNetwork.getNextIndex(); j++) {
+                double[] fastest = testRUMaps.pathInformation(testRUMaps.fastestPath(intersections[i], intersections[j]));
+                ArrayList<Intersection> path = testRUMaps.landmarkPath(intersections[i], intersections[j]);
+                landmarkSettled += testRUMaps.getSettledCount();
+                testRUMaps.astarPath(intersections[i], intersections[j]);
+                astarSettled += testRUMaps.getSettledCount();
+                assertEquals(fastest[2], testRUMaps.pathInformation(path)[2], 1e-9);
+            }
+        }
+        assertTrue(landmarkSettled <= astarSettled);
+
+        Block block = testNetwork.adj(0);
+        testRUMaps.updateTrafficFactor(block, block.getTrafficFactor() * 2);
+        try {
+            Landmarks.load(testNetwork.getCompactGraph(), file.getPath());
+            fail("Landmarks saved for other traffic should not load");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertFalse(testRUMaps.prepareLandmarks(4, file.getPath()));
+        assertEquals(testRUMaps.pathInformation(testRUMaps.fastestPath(intersections[0], intersections[1]))[2],
+                     testRUMaps.pathInformation(testRUMaps.landmarkPath(intersections[0], intersections[1]))[2], 1e-9);
+    }
+
+    @Test
+    public void testNearestIntersection() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        Random random = new Random(7);
+        for (int q = 0; q < 500; q++) {
+            int x = random.nextInt(800) - 40;
+            int y = random.nextInt(800) - 40;
+            Integer[] expected = new Integer[n];
+            for (int i = 0; i < n; i++) expected[i] = i;
+            Arrays.sort(expected, (a, b) -> {
+                long da = squaredDistance(intersections[a].getCoordinate(), x, y);
+                long db = squaredDistance(intersections[b].getCoordinate(), x, y);
+                return da != db ? Long.compare(da, db) : Integer.compare(a, b);
+            });
+            assertEquals((int) expected[0], testNetwork.nearestIntersection(x, y));
+            int[] nearest = testNetwork.nearestIntersections(x, y, 5);
+            assertEquals(5, nearest.length);
+            for (int k = 0; k < 5; k++) {
+                assertEquals((int) expected[k], nearest[k]);
+            }
+            int half = random.nextInt(30);
+            ArrayList<Integer> inside = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                Coordinate c = intersections[i].getCoordinate();
+                if (Math.abs(c.getX() - x) <= half && Math.abs(c.getY() - y) <= half) inside.add(i);
+            }
+            int[] inRange = testNetwork.intersectionsInRange(x - half, y - half, x + half, y + half);
+            assertEquals(inside.size(), inRange.length);
+            for (int k = 0; k < inRange.length; k++) {
+                assertEquals((int) inside.get(k), inRange[k]);
+            }
+        }
+        assertEquals(n, testNetwork.nearestIntersections(0, 0, n + 10).length);
+        for (int i = 0; i < n; i++) {
+            Coordinate c = intersections[i].getCoordinate();
+            assertEquals(c, intersections[testNetwork.nearestIntersection(c.getX(), c.getY())].getCoordinate());
+        }
+
+        Coordinate from = new Coordinate(intersections[0].getCoordinate().getX() + 3, intersections[0].getCoordinate().getY());
+        Coordinate to = new Coordinate(intersections[n - 1].getCoordinate().getX(), intersections[n - 1].getCoordinate().getY() - 2);
+        Intersection start = testRUMaps.nearestIntersection(from);
+        Intersection end = testRUMaps.nearestIntersection(to);
+        Route route = testRUMaps.routeBetween(from, to, Route.Type.FASTEST_PATH);
+        assertEquals(testRUMaps.fastestPath(start, end), route.getPath());
+    }
+
+    private static long squaredDistance(Coordinate c, int x, int y) {
+        long dx = c.getX() - x, dy = c.getY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    @Test
+    public void testFastestPathAt() {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        try {
+            testRUMaps.fastestPathAt(intersections[0], intersections[1], 0);
+            fail("fastestPathAt should need traffic profiles");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // With every factor the same all day, arriving earliest means the least traffic
+        TrafficProfiles profiles = testRUMaps.prepareTrafficProfiles(96, 5);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                EdgePath path = testRUMaps.fastestEdgePathAt(intersections[i], intersections[j], 17);
+                double traffic = testRUMaps.pathInformation(testRUMaps.fastestPath(intersections[i], intersections[j]))[2];
+                assertEquals(traffic, profiles.arrivalTime(path, 17) - 17, 1e-4 * (1 + traffic));
+            }
+        }
+
+        profiles.randomize();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                for (double departure : new double[]{0, 123.4, 479.9}) {
+                    EdgePath path = testRUMaps.fastestEdgePathAt(intersections[i], intersections[j], departure);
+                    assertEquals(path.getIntersections(), testRUMaps.fastestPathAt(intersections[i], intersections[j], departure));
+                    double arrival = profiles.arrivalTime(path, departure);
+                    assertTrue(arrival >= departure);
+                    // No other route that avoids revisiting intersections arrives earlier
+                    for (Route route : testRUMaps.alternativeRoutes(intersections[i], intersections[j], 10)) {
+                        double other = departure;
+                        ArrayList<Intersection> p = route.getPath();
+                        CompactGraph graph = testNetwork.getCompactGraph();
+                        for (int k = 0; k + 1 < p.size(); k++) {
+                            int u = testNetwork.findIntersection(p.get(k).getCoordinate());
+                            int v = testNetwork.findIntersection(p.get(k + 1).getCoordinate());
+                            double best = Double.POSITIVE_INFINITY;
+                            for (int e = graph.getOffsets()[u]; e < graph.getOffsets()[u + 1]; e++) {
+                                if (graph.getTargets()[e] == v) best = Math.min(best, profiles.arrivalTime(graph, e, other));
+                            }
+                            other = best;
+                        }
+                        assertTrue(arrival <= other + 1e-9);
+                    }
+                }
+            }
+        }
+
+        // Departures must be finite; any finite one, however late, takes as long as the same time of day
+        for (double departure : new double[]{Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}) {
+            try {
+                testRUMaps.fastestEdgePathAt(intersections[0], intersections[n - 1], departure);
+                fail("fastestEdgePathAt accepted a departure of " + departure);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        double day = profiles.getSlices() * profiles.getSliceLength();
+        EdgePath early = testRUMaps.fastestEdgePathAt(intersections[0], intersections[n - 1], 123.4);
+        EdgePath late = testRUMaps.fastestEdgePathAt(intersections[0], intersections[n - 1], 123.4 + 1000 * day);
+        assertEquals(profiles.arrivalTime(early, 123.4) - 123.4,
+                     profiles.arrivalTime(late, 123.4 + 1000 * day) - (123.4 + 1000 * day), 1e-6);
+        assertEquals(profiles.sliceAt(123.4), profiles.sliceAt(123.4 + 1000 * day));
+        assertEquals(profiles.sliceAt(day - 123.4), profiles.sliceAt(-123.4));
+        EdgePath veryLate = testRUMaps.fastestEdgePathAt(intersections[0], intersections[n - 1], 1e300);
+        assertFalse(veryLate.isEmpty());
+        assertTrue(profiles.arrivalTime(veryLate, 1e300) >= 1e300);
+    }
+
+    @Test
+    public void testRouteServer() throws Exception {
+        RUMaps testRUMaps = new RUMaps(TEST_FILE);
+        Network testNetwork = testRUMaps.getRutgers();
+        Intersection[] intersections = testNetwork.getIntersections();
+        int n = testNetwork.getNextIndex();
+        RouteServer server = new RouteServer(testRUMaps, 0);
+        server.start();
+        try {
+            String base = "http://localhost:" + server.getPort();
+            // Many clients at once must each get the answer a single client would
+            Thread[] clients = new Thread[8];
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (int c = 0; c < clients.length; c++) {
+                final int offset = c;
+                clients[c] = new Thread(() -> {
+                    try {
+                        for (int q = 0; q < 40; q++) {
+                            Coordinate from = intersections[(offset * 7 + q) % n].getCoordinate();
+                            Coordinate to = intersections[(offset * 3 + q * 5) % n].getCoordinate();
+                            String body = get(base + "/route?from=" + from.getX() + "," + from.getY() + "&to=" + to.getX() + "," + to.getY(), 200);
+                            double traffic = testRUMaps.pathInformation(testRUMaps.fastestEdgePath(
+                                    intersections[testNetwork.findIntersection(from)], intersections[testNetwork.findIntersection(to)]))[2];
+                            assertTrue(body, body.endsWith(",\"traffic\":" + traffic + "}"));
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                });
+                clients[c].start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+
+            Coordinate c = intersections[0].getCoordinate();
+            String point = c.getX() + "," + c.getY();
+            String fewest = get(base + "/route?type=fewest&from=" + point + "&to=" + point, 200);
+            assertTrue(fewest, fewest.startsWith("{\"type\":\"fewest\",\"path\":[[" + point + "]]"));
+            String reachable = get(base + "/reachable?from=" + point, 200);
+            assertEquals(testRUMaps.reachableIntersections(intersections[0]).size(), reachable.split("\\],\\[").length);
+            String isochrone = get(base + "/isochrone?from=" + point + "&budget=0", 200);
+            assertTrue(isochrone, isochrone.contains("\"intersections\":[[" + point + "]]"));
+
+            get(base + "/route?from=1,2", 400);
+            get(base + "/isochrone?from=" + point + "&budget=lots", 400);
+            get(base + "/route?from=" + point + "&to=" + point + "&type=scenic", 400);
+            get(base + "/nowhere", 404);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String get(String url, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        assertEquals(url, expectedStatus, connection.getResponseCode());
+        InputStream in = expectedStatus == 200 ? connection.getInputStream() : connection.getErrorStream();
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
 }